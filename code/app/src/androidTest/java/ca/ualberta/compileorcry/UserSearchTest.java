@@ -47,7 +47,10 @@ public class UserSearchTest {
         CollectionReference userColRef = db.collection("users");
         Set<String> usernames = Set.of("test","TEST","TeSt","nothing","12test12","something test something","sstestss","taeasat");
         for(String name : usernames){
-            userColRef.document(name).set(Map.of("username",name));
+            // Registration writes the search fields, old documents get them from the migration
+            Map<String, Object> userData = new HashMap<>(UserSearch.searchFields(name));
+            userData.put("username", name);
+            userColRef.document(name).set(userData);
         }
     }
 
@@ -10,10 +10,14 @@ import androidx.navigation.NavController;
 import androidx.navigation.fragment.NavHostFragment;
 
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
 
 import java.util.List;
 
 import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.domain.models.UserRepository;
 
 /**
  * Main activity that serves as the entry point for the application.
@@ -35,6 +39,10 @@ public class MainActivity extends AppCompatActivity {
     private NavController navController;
     /** Bottom navigation view for main app navigation */
     private BottomNavigationView navView;
+    /** Size of the on-disk firestore cache the feed is shown from before the server answers */
+    private static final long FIRESTORE_CACHE_BYTES = 200L * 1024 * 1024;
+    /** True once the firestore settings were applied, they can only be set before firestore is used */
+    private static boolean firestoreConfigured = false;
 
     /**
      * Initializes the activity, sets up the navigation components,
@@ -47,6 +55,12 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // Has to run before anything uses firestore
+        configureFirestore();
+
+        // Keep resolved user profiles on disk across restarts
+        UserRepository.getInstance().init(this);
+
         // Hide the action bar
         if (getSupportActionBar() != null) {
             getSupportActionBar().hide();
@@ -159,4 +173,26 @@ public class MainActivity extends AppCompatActivity {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Enables the persistent firestore cache with a fixed size, so the feed is shown from disk
+     * right away on launch or without a network and is then updated from the server.
+     */
+    private static void configureFirestore() {
+        if (firestoreConfigured) {
+            return;
+        }
+        firestoreConfigured = true;
+        FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(FIRESTORE_CACHE_BYTES)
+                        .build())
+                .build();
+        try {
+            FirebaseFirestore.getInstance().setFirestoreSettings(settings);
+        } catch (IllegalStateException e) {
+            // Firestore was already used, it keeps the settings it started with
+            Log.w(TAG, "Firestore settings could not be applied", e);
+        }
+    }
+}
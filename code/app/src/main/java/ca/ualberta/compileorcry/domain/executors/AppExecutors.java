@@ -0,0 +1,298 @@
+package ca.ualberta.compileorcry.domain.executors;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide executors for work that must not run on the main thread.
+ *
+ * There are two bounded pools:
+ * - {@link #io()} for blocking Firestore calls (e.g. Tasks.await), sized for waiting rather than CPU
+ * - {@link #compute()} for CPU bound work such as indexing or decoding, sized to the number of cores
+ * and {@link #mainThread()} to hand results back to the UI.
+ *
+ * Both pools have bounded queues, tasks that don't fit are rejected and counted instead of piling
+ * up threads. Every pool keeps counters that can be read with {@link Pool#getStats()}.
+ *
+ * Prefer {@link Pool#submit(Callable)}, which returns a CompletableFuture, over blocking the caller.
+ * {@link Pool#await(Callable, long, TimeUnit)} exists for the older synchronous helpers.
+ *
+ * @see Pool
+ */
+public final class AppExecutors {
+    private static final String TAG = "AppExecutors";
+    private static final int IO_THREADS = 8;    //blocking network calls mostly wait, so more threads than cores
+    private static final int IO_QUEUE_CAPACITY = 128;
+    private static final int COMPUTE_QUEUE_CAPACITY = 64;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile AppExecutors instance;
+
+    private final Pool io;
+    private final Pool compute;
+    private volatile Executor mainThread;
+
+    private AppExecutors() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        io = new Pool("io", IO_THREADS, IO_QUEUE_CAPACITY);
+        compute = new Pool("compute", Math.max(2, cores), COMPUTE_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @return the app-wide executors
+     */
+    public static AppExecutors getInstance() {
+        if (instance == null) {
+            synchronized (AppExecutors.class) {
+                if (instance == null) {
+                    instance = new AppExecutors();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return the pool for blocking IO such as Firestore reads awaited with Tasks.await
+     */
+    public Pool io() {
+        return io;
+    }
+
+    /**
+     * @return the pool for CPU bound work
+     */
+    public Pool compute() {
+        return compute;
+    }
+
+    /**
+     * @return an executor that runs tasks on the main thread
+     */
+    public Executor mainThread() {
+        if (mainThread == null) {
+            synchronized (this) {
+                if (mainThread == null) {
+                    Handler handler = new Handler(Looper.getMainLooper());
+                    mainThread = handler::post;
+                }
+            }
+        }
+        return mainThread;
+    }
+
+    /**
+     * Adapts a Firebase Task to a CompletableFuture without using a thread to wait on it.
+     * The future is completed on the thread that completes the task.
+     *
+     * @param task The task to adapt
+     * @return A future completed with the result or the exception of the task
+     */
+    public static <T> CompletableFuture<T> toFuture(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        //runs the listener inline since it only hands the result over
+        task.addOnCompleteListener(Runnable::run, completed -> {
+            if (completed.isSuccessful()) {
+                future.complete(completed.getResult());
+            } else {
+                future.completeExceptionally(completed.getException());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * A named, bounded and instrumented thread pool.
+     */
+    public static final class Pool implements Executor {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicInteger peakQueued = new AtomicInteger();
+        private final ThreadGroup threads;
+
+        /**
+         * @param name          The name of the pool, used for thread names and logs
+         * @param threads       The largest number of threads
+         * @param queueCapacity The largest number of queued tasks
+         */
+        public Pool(String name, int threads, int queueCapacity) {
+            this.name = name;
+            this.threads = new ThreadGroup("compileorcry-" + name);
+            ThreadFactory factory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(Pool.this.threads, runnable,
+                            "compileorcry-" + Pool.this.name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), factory, (runnable, pool) -> {
+                        rejected.incrementAndGet();
+                        Log.w(TAG, "Pool " + Pool.this.name + " rejected a task, " + getStats());
+                        throw new RejectedExecutionException("pool " + Pool.this.name + " is saturated");
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Runs a task on the pool.
+         *
+         * @param runnable The task
+         * @throws RejectedExecutionException If the queue of the pool is full
+         */
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            dispatch(() -> {
+                try {
+                    runnable.run();
+                    completed.incrementAndGet();
+                } catch (RuntimeException | Error e) {
+                    failed.incrementAndGet();
+                    Log.e(TAG, "Task failed on pool " + name, e);
+                    throw e;
+                }
+            });
+        }
+
+        /**
+         * Runs a task on the pool and returns its result as a future. A rejected task completes the
+         * future exceptionally instead of throwing. A task submitted from one of the pool's own
+         * threads is run right away on that thread so nested calls can't starve the pool.
+         *
+         * @param task The task, may throw checked exceptions
+         * @return A future completed with the result of the task
+         */
+        public <T> CompletableFuture<T> submit(Callable<T> task) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            if (isPoolThread()) {
+                submitted.incrementAndGet();
+                complete(future, task);
+                return future;
+            }
+            try {
+                dispatch(() -> complete(future, task));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        /**
+         * Runs a task on the pool and blocks until it finishes. Only meant for the synchronous
+         * helpers kept for compatibility, new code should use {@link #submit(Callable)}.
+         *
+         * @param task    The task
+         * @param timeout How long to wait
+         * @param unit    The unit of timeout
+         * @return The result of the task
+         * @throws InterruptedException If the waiting thread is interrupted
+         * @throws ExecutionException   If the task failed or was rejected
+         * @throws TimeoutException     If the task didn't finish in time
+         */
+        public <T> T await(Callable<T> task, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return submit(task).get(timeout, unit);
+        }
+
+        /**
+         * @return a snapshot of the counters of the pool
+         */
+        public Stats getStats() {
+            return new Stats(name, submitted.get(), completed.get(), failed.get(), rejected.get(),
+                    executor.getActiveCount(), executor.getQueue().size(), peakQueued.get(), executor.getPoolSize());
+        }
+
+        private void dispatch(Runnable runnable) {
+            submitted.incrementAndGet();
+            executor.execute(runnable);
+            recordQueueDepth();
+        }
+
+        private <T> void complete(CompletableFuture<T> future, Callable<T> task) {
+            T result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                future.completeExceptionally(e);
+                return;
+            }
+            completed.incrementAndGet();
+            future.complete(result);
+        }
+
+        private boolean isPoolThread() {
+            return Thread.currentThread().getThreadGroup() == threads;
+        }
+
+        private void recordQueueDepth() {
+            int queued = executor.getQueue().size();
+            int peak;
+            do {
+                peak = peakQueued.get();
+            } while (queued > peak && !peakQueued.compareAndSet(peak, queued));
+        }
+    }
+
+    /**
+     * Counters of a {@link Pool} at a point in time
+     */
+    public static final class Stats {
+        public final String name;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long rejected;
+        public final int active;
+        public final int queued;
+        public final int peakQueued;
+        public final int threads;
+
+        Stats(String name, long submitted, long completed, long failed, long rejected,
+              int active, int queued, int peakQueued, int threads) {
+            this.name = name;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.active = active;
+            this.queued = queued;
+            this.peakQueued = peakQueued;
+            this.threads = threads;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name + "{submitted=" + submitted + ", completed=" + completed + ", failed=" + failed
+                    + ", rejected=" + rejected + ", active=" + active + ", queued=" + queued
+                    + ", peakQueued=" + peakQueued + ", threads=" + threads + "}";
+        }
+    }
+}
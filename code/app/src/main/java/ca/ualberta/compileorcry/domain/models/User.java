@@ -19,8 +19,12 @@ import com.google.firebase.firestore.WriteBatch;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import ca.ualberta.compileorcry.R;
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
+import ca.ualberta.compileorcry.features.mood.data.ReasonIndex;
+import ca.ualberta.compileorcry.features.mood.model.FollowCache;
 
 /**
  * Class to represent a User stored in Firestore.
@@ -36,6 +40,7 @@ public class User {
     private String name;
     private final DocumentReference userDocRef;
     private ListenerRegistration listenerRegistration;
+    private int listeners = 0;      //number of listen() calls not released yet
     private static final String TAG = "User";
 
     public interface OnUserLoadedListener {
@@ -60,10 +65,25 @@ public class User {
      * @param documentReference Document reference to user in Firestore (can be null for display-only users)
      */
     public User(String username, String name, DocumentReference documentReference){
+        this(username, name, documentReference, true);
+    }
+
+    /**
+     * Constructor for users loaded by the {@link UserRepository}, which only listen to their
+     * document once {@link #listen()} is called.
+     *
+     * @param username Username of user
+     * @param name Display name of user
+     * @param documentReference Document reference to user in Firestore
+     * @param listen Whether to attach the snapshot listener right away
+     */
+    User(String username, String name, DocumentReference documentReference, boolean listen){
         this.username = username;
         this.name = name;
         this.userDocRef = documentReference;
-        this.attachSnapshotListener();
+        if (listen) {
+            this.attachSnapshotListener();
+        }
     }
 
     /**
@@ -98,10 +118,13 @@ public class User {
                     Map<String, Object> userData = new HashMap<>();
                     userData.put("username", username);
                     userData.put("name", name);
+                    userData.putAll(UserSearch.searchFields(username));
                     userDocReference.set(userData).addOnCompleteListener(utask -> {
                         if(utask.isSuccessful()){ // If added successfully return user and no error
+                            User newUser = new User(username, name, userDocReference);
+                            UserRepository.getInstance().put(newUser);
                             if (callback != null)
-                                callback.onUserLoaded(new User(username, name, userDocReference), null);
+                                callback.onUserLoaded(newUser, null);
                             return;
                         }
                         Log.e("UserRepository", "Error Registering User");
@@ -118,29 +141,37 @@ public class User {
     }
 
     /**
-     * Get user object from username
+     * Get user object from username, through the {@link UserRepository} so a cached user needs no read
      * @param username Username of user
      * @param callback Callback to receive user object
      */
     public static void get_user(String username, OnUserLoadedListener callback){
-        DocumentReference userDocReference = get_doc_reference_by_username(username);
-        userDocReference.get().addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                DocumentSnapshot document = task.getResult();
-                if(document.exists()){ // User exists
-                    if (callback != null) {
-                        User newUser = new User(username, document.getString("name"), userDocReference);
-                        callback.onUserLoaded(newUser, null);
-                    }
-                } else { // User does not exist
-                    if (callback != null)
-                        callback.onUserLoaded(null, "User does not exist.");
-                }
+        deliver_user(UserRepository.getInstance().getUser(username), callback);
+    }
+
+    /**
+     * Get user object from username, always read from firestore so a deleted user is never found.
+     * Used to log in, where the user has to exist.
+     * @param username Username of user
+     * @param callback Callback to receive user object
+     */
+    public static void get_user_from_db(String username, OnUserLoadedListener callback){
+        deliver_user(UserRepository.getInstance().loadUser(username), callback);
+    }
+
+    private static void deliver_user(CompletableFuture<User> future, OnUserLoadedListener callback){
+        future.whenCompleteAsync((user, error) -> {
+            if (callback == null) {
+                return;
+            }
+            if (error != null) {
+                callback.onUserLoaded(null, "Error while logging in.");
+            } else if (user == null) { // User does not exist
+                callback.onUserLoaded(null, "User does not exist.");
             } else {
-                if (callback != null)
-                    callback.onUserLoaded(null, "Error while logging in.");
+                callback.onUserLoaded(user, null);
             }
-        });
+        }, AppExecutors.getInstance().mainThread());
     }
 
     /**
@@ -163,9 +194,14 @@ public class User {
                     if (updatedName != null && !updatedName.equals(this.name)) {
                         this.name = updatedName;
                         System.out.println("Name updated to: " + this.name);
+                        UserRepository.getInstance().onUserChanged(this);
                     }
                 } else {
                     Log.e(TAG, "Attach Failed. User document does not exist.");
+                    if (documentSnapshot != null) {
+                        // The user was deleted, so it must not be served from the caches
+                        UserRepository.getInstance().invalidate(username);
+                    }
                 }
             });
         } catch (Exception e) {
@@ -173,6 +209,44 @@ public class User {
         }
     }
 
+    /**
+     * Keeps the user in sync with its Firestore document until every caller called {@link #release()}.
+     * Users shown in a list don't need this, a user displayed on its own or logged in does.
+     */
+    public synchronized void listen() {
+        listeners++;
+        if (listenerRegistration == null) {
+            attachSnapshotListener();
+        }
+    }
+
+    /**
+     * Undoes one {@link #listen()}, the listener is removed once nothing listens anymore.
+     */
+    public synchronized void release() {
+        if (listeners > 0 && --listeners == 0) {
+            cleanup();
+        }
+    }
+
+    /**
+     * @return true if the user is kept in sync with its Firestore document
+     */
+    synchronized boolean isListening() {
+        return listenerRegistration != null;
+    }
+
+    /**
+     * Changes the name of the user to the one just read from Firestore, without writing it back.
+     *
+     * @param name The name read
+     */
+    void refreshName(String name) {
+        if (name != null && !name.equals(this.name)) {
+            this.name = name;
+        }
+    }
+
     /**
      * Returns username of the user as a string.
      * @return Username of user.
@@ -232,6 +306,7 @@ public class User {
         userDocRef.delete()
                 .addOnSuccessListener(aVoid -> {
                     System.out.println("User document deleted successfully.");
+                    UserRepository.getInstance().invalidate(username);
                     if (listenerRegistration != null) {
                         listenerRegistration.remove(); // Stop listening to changes
                     }
@@ -320,7 +395,17 @@ public class User {
      * @param user User object of the currently logged-in user.
      */
     public static void setActiveUser(User user){
+        if (user == activeUser) {
+            return;
+        }
+        if (activeUser != null) {
+            activeUser.release();
+        }
         activeUser = user;
+        if (user != null) {
+            user.listen();
+            UserSearch.ensureSearchFields(user); // Users registered before username search tokens existed get them now
+        }
     }
 
     /**
@@ -330,7 +415,7 @@ public class User {
     public static void checkActiveUser(FragmentActivity activity, ActiveUserUpdatedListener callback){
         SharedPreferences sharedPref = activity.getPreferences(Context.MODE_PRIVATE);
         if(sharedPref.getBoolean(loggedin_key, false)){
-            get_user(sharedPref.getString(username_key, ""), (User user, String error) -> {
+            get_user_from_db(sharedPref.getString(username_key, ""), (User user, String error) -> {
                 if(error == null && user != null){ // If found resumed user, set and return
                     setActiveUserPersist(user, activity);
                     callback.onActiveUserUpdated(true, null);
@@ -351,6 +436,8 @@ public class User {
      */
     public static void logoutUser(FragmentActivity activity){
         setActiveUserPersist(null, activity); // Reset activeUser
+        FollowCache.getInstance().clear(); // Stop listening to the follows of the old user
+        ReasonIndex.getInstance().clear(); // Forget the moods the old user has seen
 
         // Navigate to login
         NavHostFragment navHostFragment = (NavHostFragment) activity.getSupportFragmentManager()
@@ -364,7 +451,8 @@ public class User {
      * Cleanup method to remove any attached listeners.
      * Should be called when the user object is no longer needed.
      */
-    public void cleanup() {
+    public synchronized void cleanup() {
+        listeners = 0;
         if (listenerRegistration != null) {
             listenerRegistration.remove();
             listenerRegistration = null;
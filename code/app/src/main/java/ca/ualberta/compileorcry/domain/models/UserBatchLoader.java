@@ -0,0 +1,56 @@
+package ca.ualberta.compileorcry.domain.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
+
+/**
+ * Loads many users at once through the {@link UserRepository}.
+ *
+ * Users cached in memory or on disk are used right away. The rest are read with
+ * {@code whereIn(FieldPath.documentId(), ...)} queries of at most 30 usernames, which all run at the
+ * same time. The callback is called once for the whole batch on the main thread.
+ *
+ * @see UserRepository
+ */
+public class UserBatchLoader {
+    /**
+     * Callback listener for a batch of users
+     */
+    public interface OnUsersLoadedListener {
+        /**
+         * @param users The loaded users in the order they were requested, usernames without a user document are skipped
+         * @param error Description of the error if a read failed, otherwise null. The users that could be loaded are still passed.
+         */
+        void onUsersLoaded(List<User> users, String error);
+    }
+
+    private UserBatchLoader() {}
+
+    /**
+     * Loads the users with the given usernames.
+     *
+     * @param usernames The usernames to load, duplicates are loaded once
+     * @param callback  Receives the users on the main thread
+     */
+    public static void loadUsers(Collection<String> usernames, OnUsersLoadedListener callback) {
+        List<CompletableFuture<User>> futures = UserRepository.getInstance().getUsers(usernames);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenCompleteAsync((ignored, e) -> {
+            ArrayList<User> users = new ArrayList<>();
+            String error = null;
+            for (CompletableFuture<User> future : futures) {
+                if (future.isCompletedExceptionally()) {
+                    error = "Error while loading users.";
+                } else if (future.join() != null) {
+                    users.add(future.join());
+                }
+            }
+            if (callback != null) {
+                callback.onUsersLoaded(users, error);
+            }
+        }, AppExecutors.getInstance().mainThread());
+    }
+}
@@ -0,0 +1,79 @@
+package ca.ualberta.compileorcry.domain.models;
+
+import android.util.LruCache;
+
+/**
+ * Memory tier of the {@link UserRepository}, the most recently used user profiles keyed by username.
+ *
+ * A cached name is trusted for {@link #TTL_MILLIS} ms after it was read, unless the User listens
+ * to its document, see {@link User#listen()}, which keeps it current. Past that it is no longer
+ * returned, so the repository reads it again.
+ * The cache never attaches or removes listeners, they belong to whoever called {@link User#listen()}.
+ *
+ * @see UserRepository
+ */
+public class UserCache {
+    static final long TTL_MILLIS = 10 * 60 * 1000;      //how long a name is trusted without a listener
+    private static final int MAX_USERS = 256;   //most users kept in memory
+
+    /**
+     * A cached user and when its name was read
+     */
+    private static final class Entry {
+        private final User user;
+        private final long readAt;
+
+        private Entry(User user, long readAt) {
+            this.user = user;
+            this.readAt = readAt;
+        }
+    }
+
+    private static final LruCache<String, Entry> users = new LruCache<>(MAX_USERS);
+
+    private UserCache() {}
+
+    /**
+     * @param username The username of the user
+     * @return the cached user, or null if the user isn't cached or its name is no longer trusted
+     */
+    public static User get(String username) {
+        Entry entry = users.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.user.isListening() && System.currentTimeMillis() - entry.readAt > TTL_MILLIS) {
+            users.remove(username);
+            return null;
+        }
+        return entry.user;
+    }
+
+    /**
+     * Caches a user whose name was just read, replacing the user cached with the same username.
+     *
+     * @param user The user to cache
+     */
+    public static void put(User user) {
+        put(user, System.currentTimeMillis());
+    }
+
+    /**
+     * Caches a user, replacing the user cached with the same username.
+     *
+     * @param user   The user to cache
+     * @param readAt When the name of the user was read, in epoch millis
+     */
+    static void put(User user, long readAt) {
+        users.put(user.getUsername(), new Entry(user, readAt));
+    }
+
+    /**
+     * Removes a user from the cache, e.g. once it was deleted.
+     *
+     * @param username The username of the user
+     */
+    public static void invalidate(String username) {
+        users.remove(username);
+    }
+}
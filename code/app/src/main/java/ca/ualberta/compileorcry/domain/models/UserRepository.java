@@ -0,0 +1,312 @@
+package ca.ualberta.compileorcry.domain.models;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
+
+/**
+ * Resolves usernames to user profiles with as few reads as possible.
+ *
+ * A profile is looked up in three tiers:
+ * - memory, the {@link UserCache} of recently used users, each trusted for {@link UserCache#TTL_MILLIS} ms
+ * - disk, the name of every user resolved in the last {@link #DISK_TTL_MILLIS} ms, kept in
+ *   SharedPreferences so it survives restarts
+ * - the firestore
+ *
+ * A name on disk older than the memory ttl is still returned, but read again in the background,
+ * so a renamed or deleted user is corrected the next time it is asked for.
+ * Concurrent requests for a username that isn't cached share a single read. Users read as a batch
+ * are read with whereIn queries of at most {@link #MAX_CHUNK_SIZE} usernames.
+ * Users are created without a snapshot listener, so a list of hundreds of users doesn't keep
+ * hundreds of listeners. {@link User#listen()} attaches one once a user is displayed on its own or
+ * logged in, it reports name changes and deletions back here so both tiers stay current.
+ * Logging in uses {@link #loadUser(String)}, which always reads the firestore.
+ *
+ * The disk tier is only used once {@link #init(Context)} was called.
+ *
+ * @see User#get_user(String, User.OnUserLoadedListener)
+ * @see UserBatchLoader
+ */
+public class UserRepository {
+    static final int MAX_CHUNK_SIZE = 30;   //most values firestore allows in a whereIn
+    private static final long DISK_TTL_MILLIS = 7L * 24 * 60 * 60 * 1000;  //how long a name on disk is trusted
+    private static final String PREFERENCES = "ca.ualberta.compileorcry.USER_PROFILES";
+    private static final String TAG = "UserRepository";
+    private static final UserRepository instance = new UserRepository();
+
+    private final ConcurrentHashMap<String, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();   //usernames whose stale disk entry is being read again
+    private volatile SharedPreferences disk;
+
+    private UserRepository() {}
+
+    /**
+     * @return the repository of the app
+     */
+    public static UserRepository getInstance() {
+        return instance;
+    }
+
+    /**
+     * Enables the disk tier. Should be called once when the app starts.
+     *
+     * @param context Any context, only its application context is kept
+     */
+    public void init(Context context) {
+        disk = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Gets the user with the given username.
+     *
+     * @param username Username of user
+     * @return A future completed with the user, or with null if the user does not exist
+     */
+    public CompletableFuture<User> getUser(String username) {
+        List<String> stale = new ArrayList<>();
+        User cached = getCached(username, stale);
+        refresh(stale);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return read(username);
+    }
+
+    /**
+     * Gets the user with the given username from the firestore, never from the caches. The caches
+     * are updated with the result.
+     *
+     * @param username Username of user
+     * @return A future completed with the user, or with null if the user does not exist
+     */
+    public CompletableFuture<User> loadUser(String username) {
+        return read(username);
+    }
+
+    private CompletableFuture<User> read(String username) {
+        CompletableFuture<User> future = new CompletableFuture<>();
+        CompletableFuture<User> running = inFlight.putIfAbsent(username, future);
+        if (running != null) {
+            return running;
+        }
+        DocumentReference docRef = FirebaseFirestore.getInstance().collection("users").document(username);
+        AppExecutors.toFuture(docRef.get()).whenComplete((document, e) -> {
+            if (e != null) {
+                finish(username, future, null, e);
+            } else if (document.exists()) {
+                finish(username, future, cache(document), null);
+            } else {
+                invalidate(username);
+                finish(username, future, null, null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Gets many users at once. Usernames that aren't cached or already being read are read in
+     * whereIn queries that run at the same time.
+     *
+     * @param usernames The usernames, duplicates are resolved once
+     * @return A future for every distinct username in order, completed with null if the user does not exist
+     */
+    public List<CompletableFuture<User>> getUsers(Collection<String> usernames) {
+        LinkedHashSet<String> requested = new LinkedHashSet<>(usernames);
+        List<CompletableFuture<User>> futures = new ArrayList<>();
+        Map<String, CompletableFuture<User>> toRead = new HashMap<>();
+        List<String> stale = new ArrayList<>();
+        for (String username : requested) {
+            User cached = getCached(username, stale);
+            if (cached != null) {
+                futures.add(CompletableFuture.completedFuture(cached));
+                continue;
+            }
+            CompletableFuture<User> future = new CompletableFuture<>();
+            CompletableFuture<User> running = inFlight.putIfAbsent(username, future);
+            if (running != null) {
+                futures.add(running);
+            } else {
+                futures.add(future);
+                toRead.put(username, future);
+            }
+        }
+        refresh(stale);
+
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        ArrayList<String> missing = new ArrayList<>(toRead.keySet());
+        for (int start = 0; start < missing.size(); start += MAX_CHUNK_SIZE) {
+            List<String> chunk = new ArrayList<>(missing.subList(start, Math.min(start + MAX_CHUNK_SIZE, missing.size())));
+            AppExecutors.toFuture(db.collection("users").whereIn(FieldPath.documentId(), chunk).get())
+                    .whenComplete((snapshot, e) -> {
+                        Map<String, User> found = new HashMap<>();
+                        if (e == null) {
+                            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                                found.put(document.getId(), cache(document));
+                            }
+                        }
+                        for (String username : chunk) {
+                            finish(username, toRead.get(username), found.get(username), e);
+                        }
+                    });
+        }
+        return futures;
+    }
+
+    /**
+     * Caches a user that was just created or loaded elsewhere.
+     *
+     * @param user The user
+     */
+    public void put(User user) {
+        UserCache.put(user);
+        writeDisk(user);
+    }
+
+    /**
+     * Called by the snapshot listener of a user when its document changed.
+     *
+     * @param user The user with the new data
+     */
+    void onUserChanged(User user) {
+        UserCache.put(user);
+        writeDisk(user);
+    }
+
+    /**
+     * Forgets a user in both tiers, called when its document no longer exists.
+     *
+     * @param username The username of the user
+     */
+    public void invalidate(String username) {
+        UserCache.invalidate(username);
+        SharedPreferences preferences = disk;
+        if (preferences != null) {
+            preferences.edit().remove(username).apply();
+        }
+    }
+
+    /**
+     * Gets a user from memory or disk.
+     *
+     * @param username The username of the user
+     * @param stale    Receives the username if the user came from a disk entry that should be read again
+     * @return The user, or null if it isn't cached
+     */
+    private User getCached(String username, List<String> stale) {
+        User user = UserCache.get(username);
+        if (user != null) {
+            return user;
+        }
+        SharedPreferences preferences = disk;
+        String entry = preferences == null ? null : preferences.getString(username, null);
+        long savedAt = savedAtOf(entry);
+        if (savedAt < 0 || System.currentTimeMillis() - savedAt > DISK_TTL_MILLIS) {
+            return null;
+        }
+        user = new User(username, entry.substring(entry.indexOf(':') + 1),
+                FirebaseFirestore.getInstance().collection("users").document(username), false);
+        UserCache.put(user, savedAt);
+        if (System.currentTimeMillis() - savedAt > UserCache.TTL_MILLIS) {
+            stale.add(username);
+        }
+        return user;
+    }
+
+    /**
+     * Reads users served from stale disk entries again in the background, so the caches get their
+     * current names and forget deleted users.
+     *
+     * @param usernames The usernames, ones already being read again are skipped
+     */
+    private void refresh(List<String> usernames) {
+        List<String> toRead = new ArrayList<>();
+        for (String username : usernames) {
+            if (refreshing.add(username)) {
+                toRead.add(username);
+            }
+        }
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        for (int start = 0; start < toRead.size(); start += MAX_CHUNK_SIZE) {
+            List<String> chunk = new ArrayList<>(toRead.subList(start, Math.min(start + MAX_CHUNK_SIZE, toRead.size())));
+            AppExecutors.toFuture(db.collection("users").whereIn(FieldPath.documentId(), chunk).get())
+                    .whenComplete((snapshot, e) -> {
+                        if (e != null) {
+                            Log.w(TAG, "Refreshing users failed", e);
+                        } else {
+                            HashSet<String> missing = new HashSet<>(chunk);
+                            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                                cache(document);
+                                missing.remove(document.getId());
+                            }
+                            for (String username : missing) {
+                                invalidate(username);
+                            }
+                        }
+                        refreshing.removeAll(chunk);
+                    });
+        }
+    }
+
+    private User cache(DocumentSnapshot document) {
+        User user = UserCache.get(document.getId());
+        if (user == null) {
+            user = new User(document.getId(), document.getString("name"), document.getReference(), false);
+        } else {
+            user.refreshName(document.getString("name"));
+        }
+        put(user);
+        return user;
+    }
+
+    private void finish(String username, CompletableFuture<User> future, User user, Throwable e) {
+        inFlight.remove(username, future);
+        if (e != null) {
+            Log.e(TAG, "Error loading user " + username, e);
+            future.completeExceptionally(e);
+        } else {
+            future.complete(user);
+        }
+    }
+
+    /**
+     * Reads when a disk entry was saved. Entries are stored as "savedAtMillis:name".
+     *
+     * @return the time in epoch millis, or -1 if there is no valid entry
+     */
+    private static long savedAtOf(String entry) {
+        if (entry == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(entry.substring(0, entry.indexOf(':')));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private void writeDisk(User user) {
+        SharedPreferences preferences = disk;
+        if (preferences == null || user.getName() == null) {
+            return;
+        }
+        preferences.edit().putString(user.getUsername(), System.currentTimeMillis() + ":" + user.getName()).apply();
+    }
+}
@@ -1,16 +1,28 @@
 package ca.ualberta.compileorcry.domain.models;
 
+import android.util.Log;
+
 import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 
 //Comment creation assisted using deepseek
 //From: deepseek.com
@@ -18,14 +30,21 @@ import java.util.concurrent.TimeUnit;
 //When: March 24th 2025
 /**
  * A utility class for searching user usernames in a Firestore database based on a substring match.
- * This class performs asynchronous database operations to retrieve all usernames and filters them
- * to include only those containing the specified search substring. The search is executed with
- * a timeout constraint to prevent prolonged blocking.
+ * Every user document stores its lowercase username in {@code username_lower} and every lowercase
+ * substring of up to three characters in {@code username_tokens}. A search only reads the users
+ * holding one token of the search, and matches are kept in a {@link UsernameIndex} so a search whose
+ * token was read recently, e.g. the next keystroke, is answered without a read.
+ * User documents written before the tokens existed are given them by a one-off migration, run by
+ * the first client that searches. It is recorded in the {@code meta/user_search} document, so every
+ * later search only costs one read of that document per process before its token query.
+ * A user signing in with an old document also gets the tokens, in case an old version of the app
+ * registered it after the migration.
  *
  * <p>Key features:
  * <ul>
- *   <li>Uses Firestore to fetch user data asynchronously in a background thread.</li>
- *   <li>Filters usernames to match those containing the provided search substring (case-sensitive).</li>
+ *   <li>Uses Firestore to fetch user data asynchronously on the shared IO pool.</li>
+ *   <li>Filters usernames to match those containing the provided search substring (case-insensitive).</li>
+ *   <li>Can report matches already known locally before the read finishes.</li>
  *   <li>Enforces a 10-second timeout for database operations to ensure responsiveness.</li>
  *   <li>Returns {@code null} if the database operation exceeds the allowed execution time.</li>
  * </ul>
@@ -35,6 +54,27 @@ import java.util.concurrent.TimeUnit;
  *  InterruptedException If the thread is interrupted while waiting for the database operation to complete.
  */
 public class UserSearch {
+    private static final long TOKEN_TTL_MILLIS = 60 * 1000;     //how long fetched matches are trusted
+    private static final UsernameIndex index = new UsernameIndex(TOKEN_TTL_MILLIS);
+    private static final Set<String> checkedUsers = ConcurrentHashMap.newKeySet();     //users whose search fields were checked in this process
+    private static final int TOKENS_VERSION = 1;    //version of the search fields, stored in the marker once every user has them
+    private static final int MAX_BATCH_SIZE = 500;  //most writes firestore allows in a batch
+    private static volatile boolean migrated;       //whether the marker was seen in this process
+
+    /**
+     * Callback listener for searches that report results as they become available
+     */
+    public interface SearchListener {
+        /**
+         * Called on the main thread with the matches known so far
+         *
+         * @param usernames The matching usernames
+         * @param complete  True for the final result of the search
+         */
+        void onResults(ArrayList<String> usernames, boolean complete);
+        void onError(Exception e);
+    }
+
     /**
      * Use this to find all users with the username or the substring
      *
@@ -43,30 +83,153 @@ public class UserSearch {
      * @throws InterruptedException
      */
     public static ArrayList<String> findUser(String searchString) throws InterruptedException {
-        ArrayList<String> array = new ArrayList<>();
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return findUserAsync(searchString).get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
 
-        //Runs the firestore stuff
-        executor.execute(() -> {
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            QuerySnapshot userSnapshot;
-            try {
-                userSnapshot = Tasks.await(db.collection("users").get());
-                for (DocumentSnapshot doc : userSnapshot.getDocuments()) {
-                    array.add(doc.getReference().getId());
+    /**
+     * Finds all users with the username or the substring without blocking the caller.
+     *
+     * @param searchString  the user we're looking to find, returns anything with the substring
+     * @return      a future completed with the usernames of all users in the db with the name
+     */
+    public static CompletableFuture<ArrayList<String>> findUserAsync(String searchString) {
+        return AppExecutors.getInstance().io().submit(() -> {
+            String lower = searchString.toLowerCase(Locale.ROOT);
+            if (lower.isEmpty()) {
+                //every user matches, so there is no token to read by
+                ArrayList<String> array = readAllUsernames();
+                UserSearch.reasonStringSearch(searchString, array);
+                return array;
+            }
+            ensureMigrated();
+            long now = System.currentTimeMillis();
+            if (index.freshTokenFor(lower, now) == null) {
+                String token = UsernameIndex.tokensOfSearch(lower).get(0);
+                FirebaseFirestore db = FirebaseFirestore.getInstance();
+                QuerySnapshot snapshot = Tasks.await(db.collection("users").whereArrayContains("username_tokens", token).get());
+                ArrayList<String> matches = new ArrayList<>();
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    matches.add(doc.getId());
                 }
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
+                index.putFetched(token, matches, now);
             }
+            return index.search(lower);
         });
-        executor.shutdown();
-        Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return null;
-        } else {
-            UserSearch.reasonStringSearch(searchString,array);
-            return array;
+    }
+
+    /**
+     * Finds all users with the username or the substring and reports the results incrementally.
+     * Matches already in the local index are reported right away, the complete result follows once
+     * it is read.
+     *
+     * @param searchString  the user we're looking to find
+     * @param listener      receives the results on the main thread
+     */
+    public static void findUser(String searchString, SearchListener listener) {
+        ArrayList<String> known = index.search(searchString);
+        if (!known.isEmpty()) {
+            listener.onResults(known, false);
+        }
+        findUserAsync(searchString).whenCompleteAsync((usernames, error) -> {
+            if (error != null) {
+                listener.onError(error instanceof Exception ? (Exception) error : new RuntimeException(error));
+                return;
+            }
+            listener.onResults(usernames, true);
+        }, AppExecutors.getInstance().mainThread());
+    }
+
+    /**
+     * Creates the search fields stored on a user document.
+     *
+     * @param username The username of the user
+     * @return The fields to add to the user document
+     */
+    public static Map<String, Object> searchFields(String username) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("username_lower", username.toLowerCase(Locale.ROOT));
+        fields.put("username_tokens", UsernameIndex.tokens(username));
+        return fields;
+    }
+
+    /**
+     * Adds the search fields to the document of a signed in user that was written before they
+     * existed. The fields on the document mark it as done, so it is only read once per process
+     * and only written once.
+     *
+     * @param user The signed in user
+     */
+    static void ensureSearchFields(User user) {
+        DocumentReference userDocRef = user.getUserDocRef();
+        if (userDocRef == null || !checkedUsers.add(user.getUsername())) {
+            return;
+        }
+        userDocRef.get().addOnCompleteListener(task -> {
+            if (!task.isSuccessful() || !task.getResult().exists()) {
+                checkedUsers.remove(user.getUsername());     //let the next sign in try again
+                return;
+            }
+            if (task.getResult().get("username_tokens") instanceof List) {
+                return;
+            }
+            userDocRef.update(searchFields(user.getUsername())).addOnFailureListener(e -> {
+                Log.w("Firestore", "Adding search fields to user failed", e);
+                checkedUsers.remove(user.getUsername());
+            });
+        });
+    }
+
+    /**
+     * Gives every user document written before the search fields existed its fields, once. The
+     * marker document records that it is done, so it is only read once per process afterwards.
+     * Two clients migrating at the same time write the same fields, which is harmless.
+     * Must be called on a background thread.
+     *
+     * @throws Exception If a read or write fails, the next search tries again
+     */
+    private static synchronized void ensureMigrated() throws Exception {
+        if (migrated) {
+            return;
+        }
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        DocumentReference marker = db.collection("meta").document("user_search");
+        Long version = Tasks.await(marker.get()).getLong("tokens_version");
+        if (version == null || version < TOKENS_VERSION) {
+            Log.i("Firestore", "Adding search fields to old user documents");
+            QuerySnapshot users = Tasks.await(db.collection("users").get());
+            WriteBatch batch = db.batch();
+            int writes = 0;
+            for (DocumentSnapshot doc : users.getDocuments()) {
+                if (doc.get("username_tokens") instanceof List) {
+                    continue;
+                }
+                batch.update(doc.getReference(), searchFields(doc.getId()));
+                if (++writes == MAX_BATCH_SIZE) {
+                    Tasks.await(batch.commit());
+                    batch = db.batch();
+                    writes = 0;
+                }
+            }
+            if (writes > 0) {
+                Tasks.await(batch.commit());
+            }
+            Tasks.await(marker.set(Map.of("tokens_version", TOKENS_VERSION)));
+        }
+        migrated = true;
+    }
+
+    private static ArrayList<String> readAllUsernames() throws Exception {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        QuerySnapshot userSnapshot = Tasks.await(db.collection("users").get());
+        ArrayList<String> array = new ArrayList<>();
+        for (DocumentSnapshot doc : userSnapshot.getDocuments()) {
+            array.add(doc.getReference().getId());
         }
+        return array;
     }
 
 
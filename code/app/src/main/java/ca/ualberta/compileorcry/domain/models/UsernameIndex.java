@@ -0,0 +1,188 @@
+package ca.ualberta.compileorcry.domain.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Client side index of the usernames seen by {@link UserSearch}, kept across searches.
+ *
+ * Usernames are kept in an array sorted by their lowercase form so prefix matches are found with
+ * a binary search. The index also remembers which search tokens were fully fetched from the
+ * firestore and when, so a search whose token was fetched recently can be answered without a read.
+ *
+ * @see UserSearch
+ */
+class UsernameIndex {
+    static final int MAX_TOKEN_LENGTH = 3;  //usernames are tokenized into all substrings up to this length
+
+    //sorted by lowercase username, then by username so names that only differ in case stay apart
+    private static final Comparator<String> ORDER = Comparator.comparing((String name) -> name.toLowerCase(Locale.ROOT))
+            .thenComparing(Comparator.naturalOrder());
+
+    private final ArrayList<String> sorted = new ArrayList<>();
+    private final HashMap<String, Long> fetchedTokens = new HashMap<>();    //token -> time its matches were fetched in ms
+    private final long tokenTtlMillis;
+
+    /**
+     * @param tokenTtlMillis How long a fetched token is trusted before it has to be read again
+     */
+    UsernameIndex(long tokenTtlMillis) {
+        this.tokenTtlMillis = tokenTtlMillis;
+    }
+
+    /**
+     * Splits a username into its search tokens, every distinct lowercase substring of up to
+     * {@link #MAX_TOKEN_LENGTH} characters.
+     *
+     * @param username The username
+     * @return The tokens of the username
+     */
+    static List<String> tokens(String username) {
+        String lower = username.toLowerCase(Locale.ROOT);
+        LinkedHashSet<String> tokens = new LinkedHashSet<>();
+        for (int length = 1; length <= MAX_TOKEN_LENGTH; length++) {
+            for (int start = 0; start + length <= lower.length(); start++) {
+                tokens.add(lower.substring(start, start + length));
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Picks the tokens a search can be answered with. Every username containing the search
+     * contains each of these tokens.
+     *
+     * @param search The lowercase search string
+     * @return The search itself if it is short enough, otherwise its substrings of the longest token length
+     */
+    static List<String> tokensOfSearch(String search) {
+        if (search.length() <= MAX_TOKEN_LENGTH) {
+            return Collections.singletonList(search);
+        }
+        LinkedHashSet<String> tokens = new LinkedHashSet<>();
+        for (int start = 0; start + MAX_TOKEN_LENGTH <= search.length(); start++) {
+            tokens.add(search.substring(start, start + MAX_TOKEN_LENGTH));
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Adds usernames to the index, usernames already in it are ignored.
+     *
+     * @param usernames The usernames to add
+     */
+    synchronized void addAll(Collection<String> usernames) {
+        for (String username : usernames) {
+            int index = Collections.binarySearch(sorted, username, ORDER);
+            if (index < 0) {
+                sorted.add(-index - 1, username);
+            }
+        }
+    }
+
+    /**
+     * Replaces the usernames containing token with the ones just fetched for it and records that
+     * the token was fetched. Usernames that no longer match, e.g. deleted users, are dropped.
+     *
+     * @param token   The token
+     * @param matches Every username containing the token
+     * @param now     The current time in ms
+     */
+    synchronized void putFetched(String token, Collection<String> matches, long now) {
+        Set<String> keep = new HashSet<>(matches);
+        sorted.removeIf(username -> !keep.contains(username) && username.toLowerCase(Locale.ROOT).contains(token));
+        addAll(matches);
+        fetchedTokens.put(token, now);
+    }
+
+    /**
+     * Finds a token of the search whose matches were all fetched within the ttl.
+     *
+     * @param search The lowercase search string
+     * @param now    The current time in ms
+     * @return The token, or null if the search needs a read
+     */
+    synchronized String freshTokenFor(String search, long now) {
+        for (String token : tokensOfSearch(search)) {
+            Long fetchedAt = fetchedTokens.get(token);
+            if (fetchedAt != null && now - fetchedAt <= tokenTtlMillis) {
+                return token;
+            }
+        }
+        // a fetched shorter token also covers the search
+        for (int length = Math.min(search.length(), MAX_TOKEN_LENGTH) - 1; length > 0; length--) {
+            for (int start = 0; start + length <= search.length(); start++) {
+                String token = search.substring(start, start + length);
+                Long fetchedAt = fetchedTokens.get(token);
+                if (fetchedAt != null && now - fetchedAt <= tokenTtlMillis) {
+                    return token;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the usernames in the index that contain the search, case insensitive.
+     * Usernames starting with the search come first, found with a binary search.
+     *
+     * @param search The search string
+     * @return The matching usernames
+     */
+    synchronized ArrayList<String> search(String search) {
+        String lower = search.toLowerCase(Locale.ROOT);
+        ArrayList<String> matches = new ArrayList<>();
+        int start = lowerBound(lower);
+        Set<String> prefixed = new HashSet<>();
+        for (int i = start; i < sorted.size() && sorted.get(i).toLowerCase(Locale.ROOT).startsWith(lower); i++) {
+            matches.add(sorted.get(i));
+            prefixed.add(sorted.get(i));
+        }
+        for (String username : sorted) {
+            if (!prefixed.contains(username) && username.toLowerCase(Locale.ROOT).contains(lower)) {
+                matches.add(username);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the index of the first username whose lowercase form isn't before lower
+     */
+    private int lowerBound(String lower) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).toLowerCase(Locale.ROOT).compareTo(lower) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of usernames in the index
+     */
+    synchronized int size() {
+        return sorted.size();
+    }
+
+    /**
+     * Forgets every username and fetched token.
+     */
+    synchronized void clear() {
+        sorted.clear();
+        fetchedTokens.clear();
+    }
+}
@@ -0,0 +1,439 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Runs a query over a list of keys (usernames) that can be longer than the number of values
+ * Firestore allows in a single whereIn filter.
+ *
+ * The keys are split into chunks of at most {@link #MAX_CHUNK_SIZE}, every chunk gets its own
+ * {@link QuerySource} and all of them are attached at once, so the time until the first results
+ * is bounded by the slowest chunk instead of the sum of all of them.
+ * Once every chunk has delivered its first snapshot the executor is ready and the results of all
+ * pages can be read with {@link #forEachDocumentNewestFirst(DocumentConsumer)}, a k-way merge on date.
+ *
+ * When the keys change, {@link #setKeys(Collection)} keeps every remaining key in the chunk it
+ * already was in and only re-attaches the chunks whose keys changed. The old source of a changed
+ * chunk stays attached until its replacement has delivered, then it is retired.
+ *
+ * A paged executor pages every chunk on its own, so after {@link #loadMore()} older events of one
+ * chunk can be inserted between events of another chunk that were already loaded.
+ *
+ * An executor without keys runs the query as a single source.
+ *
+ * @see QuerySource
+ * @see MoodList
+ */
+class ChunkedQueryExecutor implements QuerySource.Listener {
+    /**
+     * The largest number of values Firestore allows in a whereIn filter
+     */
+    static final int MAX_CHUNK_SIZE = 30;
+
+    /**
+     * Orders documents newest first by their date field, ties are broken by id.
+     * Documents without a date are treated as the oldest.
+     */
+    static final Comparator<DocumentSnapshot> NEWEST_FIRST = (o1, o2) -> {
+        Timestamp t1 = o1.getTimestamp("date");
+        Timestamp t2 = o2.getTimestamp("date");
+        if (t1 != null || t2 != null) {
+            if (t1 == null) {
+                return 1;
+            }
+            if (t2 == null) {
+                return -1;
+            }
+            int cmp = t2.compareTo(t1);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return o1.getId().compareTo(o2.getId());
+    };
+
+    /**
+     * Builds the query for a chunk of keys
+     */
+    interface QueryFactory {
+        /**
+         * @param keys The keys of the chunk, null if the executor has no keys
+         * @return The query for the chunk
+         */
+        Query create(List<String> keys);
+    }
+
+    /**
+     * Callback listener for the executor
+     */
+    interface Listener extends QuerySource.Listener {
+        /**
+         * Called once, when every chunk has delivered its first snapshot.
+         */
+        void onReady();
+
+        /**
+         * Called after a source was detached, the documents it delivered are no longer followed.
+         *
+         * @param source The retired source
+         */
+        void onSourceRetired(QuerySource source);
+    }
+
+    /**
+     * Receives the documents of a k-way merge
+     */
+    interface DocumentConsumer {
+        void accept(QuerySource.Page page, DocumentSnapshot document);
+    }
+
+    private static class Chunk {
+        private final ArrayList<String> keys;   //null if the executor has no keys
+        private QuerySource source;
+        private QuerySource retiring;   //the source being replaced, until source has delivered
+
+        private Chunk(ArrayList<String> keys) {
+            this.keys = keys;
+        }
+    }
+
+    private final QueryFactory queryFactory;
+    private final int pageSize;
+    private final int chunkSize;
+    private final Listener listener;
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private boolean ready = false;
+    private boolean closed = false;
+
+    /**
+     * @param queryFactory Builds the query of every chunk
+     * @param pageSize     The page size of every chunk, 0 if they aren't paged
+     * @param listener     The listener for the snapshots of every chunk
+     */
+    ChunkedQueryExecutor(QueryFactory queryFactory, int pageSize, Listener listener) {
+        this(queryFactory, pageSize, MAX_CHUNK_SIZE, listener);
+    }
+
+    ChunkedQueryExecutor(QueryFactory queryFactory, int pageSize, int chunkSize, Listener listener) {
+        this.queryFactory = queryFactory;
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Attaches a source for every chunk of the keys.
+     *
+     * @param keys The keys to split into chunks, or null to run the query as a single source
+     */
+    void start(Collection<String> keys) {
+        if (keys == null) {
+            Chunk chunk = new Chunk(null);
+            chunks.add(chunk);
+            attach(chunk);
+            return;
+        }
+        for (List<String> chunkKeys : chunk(keys, chunkSize)) {
+            Chunk chunk = new Chunk(new ArrayList<>(chunkKeys));
+            chunks.add(chunk);
+            attach(chunk);
+        }
+    }
+
+    /**
+     * Rebalances the chunks for a new set of keys. Keys that are still wanted stay in their chunk,
+     * removed keys are taken out and new keys fill the chunks that have room before new chunks
+     * are made. Only the chunks whose keys changed are re-attached.
+     *
+     * @param keys The new keys
+     */
+    void setKeys(Collection<String> keys) {
+        if (closed || chunks.isEmpty() || chunks.get(0).keys == null) {
+            return;
+        }
+        ArrayList<ArrayList<String>> assignment = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            assignment.add(chunk.keys);
+        }
+        boolean[] changed = rebalance(assignment, keys, chunkSize);
+        for (int i = 0; i < assignment.size(); i++) {
+            if (i >= chunks.size()) {
+                chunks.add(new Chunk(assignment.get(i)));
+            }
+        }
+        Iterator<Chunk> iterator = chunks.iterator();
+        int i = 0;
+        while (iterator.hasNext()) {
+            Chunk chunk = iterator.next();
+            if (changed[i]) {
+                if (chunk.keys.isEmpty()) {
+                    iterator.remove();
+                    retire(chunk.retiring);
+                    retire(chunk.source);
+                } else {
+                    replace(chunk);
+                }
+            }
+            i++;
+        }
+        checkReady();
+    }
+
+    /**
+     * Loads the next page of every chunk that has more documents.
+     *
+     * @return True if any chunk is loading a page
+     */
+    boolean loadMore() {
+        boolean loading = false;
+        for (Chunk chunk : chunks) {
+            if (chunk.source != null && chunk.source.loadMore()) {
+                loading = true;
+            }
+        }
+        return loading;
+    }
+
+    /**
+     * @return True if any chunk may have documents that aren't loaded yet
+     */
+    boolean hasMore() {
+        for (Chunk chunk : chunks) {
+            if (chunk.source != null && chunk.source.hasMore()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a chunk has documents from the cache that the server didn't confirm yet
+     */
+    boolean isFromCache() {
+        for (Chunk chunk : chunks) {
+            if (chunk.source != null && chunk.source.isFromCache()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a chunk holds local writes that the server didn't confirm yet
+     */
+    boolean hasPendingWrites() {
+        for (Chunk chunk : chunks) {
+            if (chunk.source != null && chunk.source.hasPendingWrites()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True once every chunk has delivered its first snapshot
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Detaches every source, nothing is delivered after this.
+     */
+    void close() {
+        closed = true;
+        for (Chunk chunk : chunks) {
+            if (chunk.retiring != null) {
+                chunk.retiring.detach();
+            }
+            if (chunk.source != null) {
+                chunk.source.detach();
+            }
+        }
+        chunks.clear();
+    }
+
+    /**
+     * Hands the latest documents of every page of every chunk to the consumer, newest first.
+     * Every page is already ordered by date so they are combined with a k-way merge.
+     *
+     * @param consumer Receives each document with the page it belongs to
+     */
+    void forEachDocumentNewestFirst(DocumentConsumer consumer) {
+        ArrayList<QuerySource.Page> pages = new ArrayList<>();
+        ArrayList<List<DocumentSnapshot>> documents = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            for (QuerySource.Page page : chunk.source.getPages()) {
+                pages.add(page);
+                documents.add(page.getDocuments());
+            }
+        }
+        mergeSorted(documents, NEWEST_FIRST, (list, document) -> consumer.accept(pages.get(list), document));
+    }
+
+    @Override
+    public void onPageSnapshot(QuerySource.Page page, QuerySnapshot snapshot, boolean firstSnapshot) {
+        if (closed) {
+            return;
+        }
+        listener.onPageSnapshot(page, snapshot, firstSnapshot);
+        QuerySource source = page.getSource();
+        for (Chunk chunk : chunks) {
+            if (chunk.source == source && chunk.retiring != null && source.hasDelivered()) {
+                // The replacement caught up, the old source can go
+                QuerySource retiring = chunk.retiring;
+                chunk.retiring = null;
+                retire(retiring);
+            }
+        }
+        checkReady();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        listener.onError(e);
+    }
+
+    private void attach(Chunk chunk) {
+        chunk.source = new QuerySource(queryFactory.create(chunk.keys == null ? null : new ArrayList<>(chunk.keys)),
+                pageSize, this);
+        chunk.source.attach();
+    }
+
+    private void replace(Chunk chunk) {
+        QuerySource old = chunk.source;
+        if (chunk.retiring == null) {
+            chunk.retiring = old;
+        } else {
+            // The previous replacement never caught up, the first source is still the one to keep
+            retire(old);
+        }
+        attach(chunk);
+    }
+
+    private void retire(QuerySource source) {
+        if (source == null) {
+            return;
+        }
+        source.detach();
+        listener.onSourceRetired(source);
+    }
+
+    private void checkReady() {
+        if (ready || closed || chunks.isEmpty()) {
+            return;
+        }
+        for (Chunk chunk : chunks) {
+            if (!chunk.source.hasDelivered()) {
+                return;
+            }
+        }
+        ready = true;
+        listener.onReady();
+    }
+
+    /**
+     * Splits keys into consecutive chunks of at most chunkSize keys.
+     *
+     * @param keys      The keys to split, duplicates are dropped
+     * @param chunkSize The largest number of keys in a chunk
+     * @return The chunks, in the order of the keys
+     */
+    static List<List<String>> chunk(Collection<String> keys, int chunkSize) {
+        ArrayList<String> unique = new ArrayList<>(new LinkedHashSet<>(keys));
+        ArrayList<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < unique.size(); i += chunkSize) {
+            chunks.add(new ArrayList<>(unique.subList(i, Math.min(i + chunkSize, unique.size()))));
+        }
+        return chunks;
+    }
+
+    /**
+     * Moves the chunks to a new set of keys while moving as few keys as possible.
+     * Keys that are no longer wanted are removed from their chunk, keys that are still wanted stay
+     * where they are and new keys fill the chunks with room in order before new chunks are appended.
+     *
+     * @param chunks    The current chunks, modified in place, new chunks are appended
+     * @param keys      The new keys
+     * @param chunkSize The largest number of keys in a chunk
+     * @return For every chunk in chunks after the call, true if its keys changed
+     */
+    static boolean[] rebalance(List<ArrayList<String>> chunks, Collection<String> keys, int chunkSize) {
+        LinkedHashSet<String> remaining = new LinkedHashSet<>(keys);
+        ArrayList<Boolean> changed = new ArrayList<>();
+        for (ArrayList<String> chunk : chunks) {
+            changed.add(chunk.retainAll(remaining));
+            remaining.removeAll(chunk);
+        }
+        for (String key : remaining) {
+            int target = -1;
+            for (int i = 0; i < chunks.size(); i++) {
+                if (chunks.get(i).size() < chunkSize) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                chunks.add(new ArrayList<>());
+                changed.add(true);
+                target = chunks.size() - 1;
+            }
+            chunks.get(target).add(key);
+            changed.set(target, true);
+        }
+        boolean[] result = new boolean[changed.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = changed.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Receives the elements of a k-way merge
+     */
+    interface MergeConsumer<T> {
+        /**
+         * @param list    The index of the list the element came from
+         * @param element The element
+         */
+        void accept(int list, T element);
+    }
+
+    /**
+     * Merges lists that are each already sorted into one sorted sequence with a k-way merge.
+     * Runs in O(n log k) for n elements in k lists.
+     *
+     * @param lists      The sorted lists
+     * @param comparator The order the lists are sorted in
+     * @param consumer   Receives every element in merged order
+     */
+    static <T> void mergeSorted(List<? extends List<T>> lists, Comparator<? super T> comparator, MergeConsumer<T> consumer) {
+        // Each entry is {list index, position in that list}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+                (a, b) -> comparator.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> list = lists.get(head[0]);
+            consumer.accept(head[0], list.get(head[1]));
+            if (head[1] + 1 < list.size()) {
+                heads.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import com.firebase.geofire.GeoQueryBounds;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.ualberta.compileorcry.features.mood.model.GeoFilter;
+import ca.ualberta.compileorcry.features.mood.model.GeoHashDecoder;
+
+/**
+ * Live geo query over base queries that are ordered by the geohash in the location field of
+ * their documents.
+ *
+ * The circle of a {@link GeoFilter} is covered by its precomputed geohash bounds and every bound of
+ * every base query gets its own snapshot listener, a {@link QuerySource}. Bounds can overlap, so
+ * the engine keeps the latest snapshot of every document with the number of bounds that see it,
+ * a document is only dropped once no bound sees it anymore. The bounds return some documents
+ * outside of the radius, only the ones within it are matches. The distance of a document is
+ * checked again only when it changed or the center moved.
+ *
+ * Moving the center or changing the radius or base queries keeps the listeners of the bounds
+ * that are still needed and only attaches the new ones.
+ *
+ * @see MoodList
+ */
+class GeoQueryEngine implements QuerySource.Listener {
+    /**
+     * Callback listener for the matches of the engine
+     */
+    interface Listener {
+        /**
+         * Called once, when every bound has delivered its first snapshot. The matches can then be
+         * read with {@link #getMatches()}.
+         */
+        void onReady();
+
+        /**
+         * Called after a snapshot or a move changed the matches, once the engine is ready.
+         *
+         * @param matched   Documents that came within the radius or changed while within it
+         * @param unmatched Ids of the documents that are no longer matches
+         */
+        void onMatchesChanged(List<DocumentSnapshot> matched, List<String> unmatched);
+
+        void onError(Exception e);
+    }
+
+    private final Listener listener;
+    private final HashMap<String, QuerySource> sources = new HashMap<>();     //the listener of every bound, by bound key
+    private final HashMap<QuerySource, HashSet<String>> idsOf = new HashMap<>();     //ids of the documents each source sees
+    private final HashMap<String, DocumentSnapshot> documents = new HashMap<>();    //latest snapshot of every seen document, by id
+    private final HashMap<String, double[]> positions = new HashMap<>();      //decoded location of every seen document, by id, null if it has none
+    private final HashMap<String, Integer> boundCounts = new HashMap<>();     //number of sources that see each document
+    private final HashSet<String> matches = new HashSet<>();      //ids of the documents within the radius
+    private GeoFilter circle;       //the circle queried, only its center and radius are used
+    private boolean ready = false;
+    private boolean closed = false;
+
+    GeoQueryEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queries the circle, or moves the query to a new circle or base queries.
+     *
+     * @param queries The base queries by a key that stays the same while the query does, each
+     *                ordered by location
+     * @param circle  The circle
+     */
+    void query(Map<String, Query> queries, GeoFilter circle) {
+        if (closed) {
+            return;
+        }
+        this.circle = circle;
+        LinkedHashMap<String, Query> wanted = new LinkedHashMap<>();
+        for (GeoQueryBounds bounds : circle.getBounds()) {
+            for (Map.Entry<String, Query> query : queries.entrySet()) {
+                wanted.put(query.getKey() + "|" + bounds.startHash + "|" + bounds.endHash,
+                        query.getValue().startAt(bounds.startHash).endAt(bounds.endHash));
+            }
+        }
+        Iterator<Map.Entry<String, QuerySource>> iterator = sources.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, QuerySource> source = iterator.next();
+            if (!wanted.containsKey(source.getKey())) {
+                source.getValue().detach();
+                iterator.remove();
+                for (String id : idsOf.remove(source.getValue())) {
+                    release(id);
+                }
+            }
+        }
+        for (Map.Entry<String, Query> bound : wanted.entrySet()) {
+            if (!sources.containsKey(bound.getKey())) {
+                QuerySource source = new QuerySource(bound.getValue(), 0, this);
+                sources.put(bound.getKey(), source);
+                idsOf.put(source, new HashSet<>());
+                source.attach();
+            }
+        }
+        // The distances changed with the center, documents that stayed within it are unchanged
+        List<DocumentSnapshot> matched = new ArrayList<>();
+        List<String> unmatched = new ArrayList<>();
+        HashSet<String> ids = new HashSet<>(documents.keySet());
+        ids.addAll(matches);
+        for (String id : ids) {
+            evaluate(id, false, matched, unmatched);
+        }
+        deliver(matched, unmatched);
+    }
+
+    /**
+     * @return the documents within the radius
+     */
+    List<DocumentSnapshot> getMatches() {
+        List<DocumentSnapshot> matched = new ArrayList<>();
+        for (String id : matches) {
+            matched.add(documents.get(id));
+        }
+        return matched;
+    }
+
+    /**
+     * @return True if a bound has documents from the cache that the server didn't confirm yet
+     */
+    boolean isFromCache() {
+        for (QuerySource source : sources.values()) {
+            if (source.isFromCache()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a bound holds local writes that the server didn't confirm yet
+     */
+    boolean hasPendingWrites() {
+        for (QuerySource source : sources.values()) {
+            if (source.hasPendingWrites()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detaches every bound, nothing is delivered after this.
+     */
+    void close() {
+        closed = true;
+        for (QuerySource source : sources.values()) {
+            source.detach();
+        }
+        sources.clear();
+        idsOf.clear();
+    }
+
+    @Override
+    public void onPageSnapshot(QuerySource.Page page, QuerySnapshot snapshot, boolean firstSnapshot) {
+        HashSet<String> ids = idsOf.get(page.getSource());
+        if (closed || ids == null) {
+            // The bound was detached
+            return;
+        }
+        List<DocumentSnapshot> matched = new ArrayList<>();
+        List<String> unmatched = new ArrayList<>();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            String id = change.getDocument().getId();
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                if (ids.remove(id)) {
+                    release(id);
+                }
+                evaluate(id, false, matched, unmatched);
+            } else {
+                if (ids.add(id)) {
+                    boundCounts.merge(id, 1, Integer::sum);
+                }
+                documents.put(id, change.getDocument());
+                positions.put(id, decode(change.getDocument()));
+                evaluate(id, true, matched, unmatched);
+            }
+        }
+        deliver(matched, unmatched);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        listener.onError(e);
+    }
+
+    private void deliver(List<DocumentSnapshot> matched, List<String> unmatched) {
+        if (!ready) {
+            for (QuerySource source : sources.values()) {
+                if (!source.hasDelivered()) {
+                    return;
+                }
+            }
+            ready = true;
+            listener.onReady();
+        } else if (!matched.isEmpty() || !unmatched.isEmpty()) {
+            listener.onMatchesChanged(matched, unmatched);
+        }
+    }
+
+    /**
+     * Updates whether a document is a match.
+     *
+     * @param changed True if the snapshot of the document changed
+     */
+    private void evaluate(String id, boolean changed, List<DocumentSnapshot> matched, List<String> unmatched) {
+        DocumentSnapshot document = documents.get(id);
+        double[] position = positions.get(id);
+        if (document != null && position != null && circle.contains(position[0], position[1])) {
+            if (matches.add(id) || changed) {
+                matched.add(document);
+            }
+        } else if (matches.remove(id)) {
+            unmatched.add(id);
+        }
+    }
+
+    /**
+     * Decodes the location of a document once per snapshot, a move only measures the distance again.
+     *
+     * @return The latitude and longitude, or null if the document has no valid location
+     */
+    private static double[] decode(DocumentSnapshot document) {
+        String geoHash = document.getString("location");
+        if (geoHash == null) {
+            return null;
+        }
+        try {
+            return GeoHashDecoder.decode(geoHash);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Drops a document from a bound, it is forgotten once no bound sees it.
+     */
+    private void release(String id) {
+        Integer count = boundCounts.get(id);
+        if (count == null || count <= 1) {
+            boundCounts.remove(id);
+            documents.remove(id);
+            positions.remove(id);
+        } else {
+            boundCounts.put(id, count - 1);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the firestore snapshot listeners attached for MoodLists, so listeners that are never
+ * removed show up as a growing count.
+ *
+ * Registrations are wrapped by {@link #track(ListenerRegistration)}, the wrapper lowers the count
+ * the first time it is removed.
+ *
+ * @see MoodList#getLiveListenerCount()
+ */
+final class LiveListeners {
+    private static final AtomicInteger live = new AtomicInteger();     //number of tracked registrations not removed yet
+
+    private LiveListeners() {}
+
+    /**
+     * Counts an attached listener until its registration is removed.
+     *
+     * @param registration The registration of the listener
+     * @return The registration to keep and remove instead of the original
+     */
+    static ListenerRegistration track(ListenerRegistration registration) {
+        live.incrementAndGet();
+        return new ListenerRegistration() {
+            private boolean removed = false;
+
+            @Override
+            public void remove() {
+                synchronized (this) {
+                    if (removed) {
+                        return;
+                    }
+                    removed = true;
+                }
+                live.decrementAndGet();
+                registration.remove();
+            }
+        };
+    }
+
+    /**
+     * @return the number of tracked listeners that are attached
+     */
+    static int count() {
+        return live.get();
+    }
+}
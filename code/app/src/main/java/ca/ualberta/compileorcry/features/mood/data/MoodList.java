@@ -2,49 +2,52 @@ package ca.ualberta.compileorcry.features.mood.data;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
-import com.firebase.geofire.GeoFireUtils;
-import com.firebase.geofire.GeoLocation;
-import com.firebase.geofire.GeoQueryBounds;
 import com.firebase.geofire.core.GeoHash;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 import com.google.firebase.storage.FirebaseStorage;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 import ca.ualberta.compileorcry.domain.models.User;
 import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
+import ca.ualberta.compileorcry.features.mood.model.FollowCache;
+import ca.ualberta.compileorcry.features.mood.model.GeoFilter;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+import ca.ualberta.compileorcry.features.mood.model.TriggerIndex;
 
 
 //Comment creation assisted using deepseek
@@ -68,8 +71,12 @@ import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
  *
  * Usage:
  * - Use the `createMoodList` factory method to initialize a MoodList instance with the desired query type and filter.
+ * - Use the `createPagedMoodList` factory method instead to load large lists a page at a time with `loadMore`.
  * - Implement the `MoodListListener` interface to receive callbacks when the mood list is initialized or updated.
  * - Use the provided methods (`addMoodEvent`, `deleteMoodEvent`, `editMoodEvent`) to modify the mood list.
+ * - Call `close` once the MoodList is no longer shown, it listens to firestore until then.
+ * - MoodLists created for the same user, query type, filter and page size share one query, its
+ *   listeners and its events, the query is closed once every one of them is closed.
  *
  * Note:
  * - Certain operations (e.g., adding or editing events) are restricted based on the query type and write permissions.
@@ -79,8 +86,8 @@ import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
  * @see QueryType
  * @see MoodListListener
  */
-public class MoodList implements Serializable {
-    private final ArrayList<MoodEvent> moodEvents;  //a list of moodEvents, don't modify it outside of this class
+public class MoodList implements Serializable, AutoCloseable {
+    private final MoodStore moodEvents;  //indexed store of moodEvents, don't modify it outside of this class
     private final MoodList ptrToSelf;   //a reference to itself
     private boolean writeAllowed = false;   //internal boolean that prevents usage of add/delete/edit methods when using filtered queries
     private boolean dontUpdate = false;     //boolean that can be set true to prevent it from calling the update in the listener
@@ -92,14 +99,46 @@ public class MoodList implements Serializable {
     private final CollectionReference followingRef;     //colref to the following subcollection
     private final CollectionReference moodEventsRef;    //colref to the mood_events subcollection
     private final CollectionReference moodEventsRecentRef;      //colref to the most_recent_moods collection
+    private final RecentMoods recentMoods;      //maintains the recent_moods projection of the user
     private final QueryType queryType;      //the query type of this moodlist
-    private Query query;        //firestore query for loading data
+    private ChunkedQueryExecutor queryExecutor;     //runs the query, split into chunks of followings for FOLLOWING_* types
     private final MoodListListener listener;        //listener for callbacks
     private final FirebaseFirestore db;     //reference to the database
     private final ArrayList<String> followings;     //list of username of who the user follows
     private static final EnumSet<QueryType> reasonQueryTypes = EnumSet.of(QueryType.FOLLOWING_REASON,QueryType.HISTORY_REASON);     //a EnumSet of the reason query types
     private Object filter;      //the criteria for filtering in state and reason query types
-    Semaphore recentSemi = new Semaphore(1,true);
+    private String reasonFilterLowercase;       //lowercase reason filter of reason query types, computed once
+    private boolean narrowReasonByToken = false;    //true if the reason query can be narrowed by trigger_tokens
+    private static final ConcurrentHashMap<String, CompletableFuture<Void>> triggerBackfills = new ConcurrentHashMap<>();    //backfill of the trigger tokens of each user, by username
+    private static final String TRIGGER_TOKENS_FLAG = "trigger_tokens_indexed";     //set on a user document once all their events have trigger tokens
+    private final ReasonIndex reasonIndex = ReasonIndex.getInstance();     //on-device index of the triggers of every seen event
+    private static final EnumSet<QueryType> completeQueryTypes = EnumSet.of(QueryType.HISTORY_MODIFIABLE, QueryType.FOLLOWING);     //query types whose removals are deletions, not events leaving a filter
+    private boolean answeredFromIndex = false;      //true if the listener got a reason search answer from the ReasonIndex before the first snapshot
+    private static final EnumSet<QueryType> pagedQueryTypes = EnumSet.of(QueryType.HISTORY_MODIFIABLE, QueryType.HISTORY_RECENT,
+            QueryType.HISTORY_STATE, QueryType.HISTORY_REASON, QueryType.FOLLOWING, QueryType.FOLLOWING_RECENT,
+            QueryType.FOLLOWING_STATE, QueryType.FOLLOWING_REASON);     //a EnumSet of the query types that can be paged
+    private final int pageSize;     //number of events per page, 0 if the MoodList isn't paged
+    private final HashMap<String, QuerySource.Page> pageOfEvent = new HashMap<>();   //which page listener each event was last seen by
+    private static final int MAX_BATCH_SIZE = 500;     //largest number of writes firestore allows in a batch
+    private int bulkWrites = 0;     //number of running bulk writes, snapshot updates are held back while it isn't 0
+    private boolean heldSnapshot = false;   //true if a snapshot update was held back during a bulk write
+    private final HashSet<String> editsInFlight = new HashSet<>();      //ids of events with an edit being written
+    private final HashMap<String, Map<String, Object>> pendingEdits = new HashMap<>();  //changes of edits waiting for the write before them, by event id
+    private final HashMap<String, MoodEvent> storedStates = new HashMap<>();     //last stored state of events with edits being written, by event id
+    private ListenerRegistration followingRegistration;     //registration of the listener on the following subcollection
+    private volatile boolean closed = false;     //true once close() removed the listeners, nothing is delivered after that
+    private static final AtomicInteger openMoodLists = new AtomicInteger();     //number of MoodLists created and not closed yet
+    private static final EnumSet<QueryType> sharedQueryTypes = EnumSet.complementOf(EnumSet.of(QueryType.MAP_CLOSE, QueryType.MAP_PERSONAL_CLOSE));    //query types whose query is shared by identical MoodLists
+    private static final HashMap<String, MoodList> sharedQueries = new HashMap<>();     //the MoodList running each shared query, by queryKey
+    private final MoodList shared;      //the MoodList running the query this one subscribes to, null if it runs its own
+    private final Subscribers subscribers;      //the MoodLists subscribed to the query of this one, null if it isn't shared
+    private String sharedKey;       //the key of the shared query of this MoodList in sharedQueries
+    private boolean returned = false;       //true once returnMoodList was called for this subscriber
+    private boolean fromCache = true;       //sync state last reported to the listener, true if events may be out of date
+    private boolean pendingWrites = false;      //sync state last reported to the listener, true if local writes aren't stored yet
+    private boolean syncStateReported = false;      //true once the sync state was reported to the listener
+    private GeoQueryEngine geoEngine;       //runs the live geo query of MAP_CLOSE types
+    private GeoFilter geoFilter;        //circle and criteria of MAP_*_CLOSE types
     /**
      * Callback listener to handle returning data from asyn events
      */
@@ -109,6 +148,76 @@ public class MoodList implements Serializable {
         void updatedMoodList();
 
         void onError(Exception e);
+
+        /**
+         * Called when a snapshot changed only part of the MoodList, with the positions that were
+         * inserted, changed, moved or removed. Override this to make targeted UI updates.
+         * By default it falls back to {@link #updatedMoodList()}.
+         *
+         * @param delta The changes that were made to the MoodList, in order
+         */
+        default void updatedMoodList(MoodListDelta delta) {
+            updatedMoodList();
+        }
+
+        /**
+         * Called once the MoodList was returned and whenever its sync state changes. Events are
+         * first shown from the on-device cache and then confirmed by the server, writes made on
+         * this device are shown before the server stored them.
+         * By default it does nothing.
+         *
+         * @param fromCache        True if some events are from the cache and may be out of date
+         * @param hasPendingWrites True if some events have local changes the server didn't store yet
+         */
+        default void onSyncStateChanged(boolean fromCache, boolean hasPendingWrites) {
+        }
+    }
+
+    /**
+     * Listener of a shared query, hands every callback to each MoodList subscribed to it
+     */
+    private static class Subscribers implements MoodListListener {
+        private final ArrayList<MoodList> moodLists = new ArrayList<>();
+        private Exception pendingError;     //error reported before the query delivered, repeated to late subscribers
+
+        @Override
+        public void returnMoodList(MoodList initalizedMoodList) {
+            pendingError = null;
+            for (MoodList moodList : new ArrayList<>(moodLists)) {
+                moodList.queryReturned();
+            }
+        }
+
+        @Override
+        public void updatedMoodList() {
+            for (MoodList moodList : new ArrayList<>(moodLists)) {
+                moodList.queryUpdated(null);
+            }
+        }
+
+        @Override
+        public void updatedMoodList(MoodListDelta delta) {
+            for (MoodList moodList : new ArrayList<>(moodLists)) {
+                moodList.queryUpdated(delta);
+            }
+        }
+
+        @Override
+        public void onSyncStateChanged(boolean fromCache, boolean hasPendingWrites) {
+            for (MoodList moodList : new ArrayList<>(moodLists)) {
+                if (moodList.returned && !moodList.closed) {
+                    moodList.listener.onSyncStateChanged(fromCache, hasPendingWrites);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            pendingError = e;
+            for (MoodList moodList : new ArrayList<>(moodLists)) {
+                moodList.listener.onError(e);
+            }
+        }
     }
 
     /**
@@ -118,102 +227,150 @@ public class MoodList implements Serializable {
      * @param user     The user associated with the MoodList.
      * @param queryType The type of query to execute (e.g., HISTORY_MODIFIABLE, FOLLOWING_RECENT, etc.).
      * @param listener The listener to handle MoodList initialization and updates.
-     * @param filter   An optional filter to apply to the query (e.g., EmotionalState, String, etc.).
+     * @param filter   An optional filter to apply to the query (e.g., EmotionalState, String, GeoFilter, etc.).
+     * @return The MoodList, which listens to firestore until it is closed with {@link #close()}
      * @throws IllegalArgumentException If the filter is invalid for the specified query type.
      */
-    public static void createMoodList(User user, QueryType queryType, MoodListListener listener, Object filter) {
+    public static MoodList createMoodList(User user, QueryType queryType, MoodListListener listener, Object filter) {
+        return createMoodList(user, queryType, listener, filter, 0);
+    }
+
+    /**
+     * Factory method to create a paged MoodList. Only the newest pageSize events are loaded at first,
+     * older events are loaded a page at a time with {@link #loadMore()}.
+     * The real-time listeners only cover the pages that have been loaded, so the cost of opening
+     * the list doesn't grow with the size of the history.
+     * Paging is supported by the HISTORY_* and FOLLOWING_* query types.
+     *
+     * @param user     The user associated with the MoodList.
+     * @param queryType The type of query to execute, must be a HISTORY_* or FOLLOWING_* type.
+     * @param listener The listener to handle MoodList initialization and updates.
+     * @param filter   An optional filter to apply to the query (e.g., EmotionalState, String, GeoFilter, etc.).
+     * @param pageSize The number of events per page.
+     * @throws IllegalArgumentException If the query type can't be paged, the page size isn't positive,
+     *                                  or the filter is invalid for the specified query type.
+     * @return The MoodList, which listens to firestore until it is closed with {@link #close()}
+     */
+    public static MoodList createPagedMoodList(User user, QueryType queryType, MoodListListener listener, Object filter, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        if (!pagedQueryTypes.contains(queryType)) {
+            throw new IllegalArgumentException("paging is not supported for query type: " + queryType);
+        }
+        return createMoodList(user, queryType, listener, filter, pageSize);
+    }
+
+    private static MoodList createMoodList(User user, QueryType queryType, MoodListListener listener, Object filter, int pageSize) {
+        if (!sharedQueryTypes.contains(queryType)) {
+            // The circle of a geo query can be moved, every MoodList runs its own
+            MoodList moodList = openQuery(user, queryType, listener, filter, pageSize);
+            openMoodLists.incrementAndGet();
+            return moodList;
+        }
+        String key = queryKey(user, queryType, filter, pageSize);
+        synchronized (sharedQueries) {
+            MoodList query = sharedQueries.get(key);
+            if (query == null) {
+                query = openQuery(user, queryType, new Subscribers(), filter, pageSize);
+                query.sharedKey = key;
+                sharedQueries.put(key, query);
+                Log.d("MoodList", "Opened shared " + queryType + " query, " + sharedQueries.size() + " shared queries");
+            }
+            return new MoodList(query, listener);
+        }
+    }
+
+    /**
+     * @return the key of a shared query, MoodLists with the same key get the same events
+     */
+    private static String queryKey(User user, QueryType queryType, Object filter, int pageSize) {
+        return user.getUsername() + "/" + queryType + "/" + pageSize + "/" + (filter instanceof EmotionalState ? ((EmotionalState) filter).name() : filter);
+    }
+
+    private static MoodList openQuery(User user, QueryType queryType, MoodListListener listener, Object filter, int pageSize) {
         switch (queryType) {
             case HISTORY_MODIFIABLE:
                 // Handle HISTORY_MODIFIABLE query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case HISTORY_RECENT:
                 // Handle HISTORY_RECENCY query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case HISTORY_STATE:
                 // Handle HISTORY_STATE query type
                 if (filter instanceof EmotionalState) {
-                    new MoodList(user, queryType, listener, filter);
+                    return new MoodList(user, queryType, listener, filter, pageSize);
                 } else {
                     throw new IllegalArgumentException("filter needs to be of type Emotional State");
                 }
-                break;
             case HISTORY_REASON:
                 // Handle HISTORY_REASON query type
                 if (filter instanceof String) {
-                    new MoodList(user, queryType, listener, filter);
+                    return new MoodList(user, queryType, listener, filter, pageSize);
                 } else {
                     throw new IllegalArgumentException("filter needs to be of type Emotional String");
                 }
-                break;
             case FOLLOWING:
                 // Handle FOLLOWING query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case FOLLOWING_RECENT:
                 // Handle FOLLOWING_RECENT query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case FOLLOWING_STATE:
                 // Handle FOLLOWING_STATE query type
                 if (filter instanceof EmotionalState) {
-                    new MoodList(user, queryType, listener, filter);
+                    return new MoodList(user, queryType, listener, filter, pageSize);
                 } else {
                     throw new IllegalArgumentException("filter needs to be of type Emotional State");
                 }
-                break;
             case FOLLOWING_REASON:
                 // Handle FOLLOWING_REASON query type
                 if (filter instanceof String) {
-                    new MoodList(user, queryType, listener, filter);
+                    return new MoodList(user, queryType, listener, filter, pageSize);
                 } else {
                     throw new IllegalArgumentException("filter needs to be of type String");
                 }
-                break;
             case MAP_PERSONAL:
                 // Handle MAP_PERSONAL query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case MAP_FOLLOWING:
                 // Handle MAP_FOLLOWED query type
-                new MoodList(user, queryType, listener);
-                break;
+                return new MoodList(user, queryType, listener, pageSize);
             case MAP_CLOSE:
                 // Handle MAP_CLOSE query type
-                new MoodList(user, queryType, listener, filter);
-                break;
+                return new MoodList(user, queryType, listener, geoFilterOf(filter), pageSize);
             case MAP_PERSONAL_CLOSE:
                 // Handle MAP_CLOSE query type
-                new MoodList(user, queryType, listener, filter);
-                break;
+                return new MoodList(user, queryType, listener, geoFilterOf(filter), pageSize);
             default:
                 // Handle unexpected query types
                 throw new IllegalArgumentException("unsupported query type: " + queryType);
         }
     }
 
-    private MoodList(User user, QueryType queryType, MoodListListener initListener) {
+    private MoodList(User user, QueryType queryType, MoodListListener initListener, int pageSize) {
         this.user = user;
+        this.pageSize = pageSize;
         this.queryType = queryType;
         this.listener = initListener;
-        this.moodEvents = new ArrayList<MoodEvent>();
+        this.moodEvents = new MoodStore();
         this.followings = new ArrayList<String>();
         this.userDocRef = user.getUserDocRef();
         this.db = FirebaseFirestore.getInstance();
         this.followingRef = userDocRef.collection("following");
         this.moodEventsRef = userDocRef.collection("mood_events");
         this.moodEventsRecentRef = db.collection("most_recent_moods");
+        this.recentMoods = new RecentMoods(db, user.getUsername());
         this.ptrToSelf = this;
+        this.shared = null;
+        this.subscribers = initListener instanceof Subscribers ? (Subscribers) initListener : null;
         switch (queryType) {
             case HISTORY_MODIFIABLE:
-                getQuery();
                 this.writeAllowed = true;
-                attachMoodEventsListener(this.query);
+                attachQueryListeners();
                 break;
             case HISTORY_RECENT:
-                getQuery();
-                attachMoodEventsListener(this.query);
+                attachQueryListeners();
                 break;
             case FOLLOWING:
                 this.recentsType = true;
@@ -224,9 +381,8 @@ public class MoodList implements Serializable {
                 attachFollowersListener();
                 break;
             case MAP_PERSONAL:
-                getQuery();
                 this.mapType = true;
-                attachMoodEventsListener(this.query);
+                attachQueryListeners();
                 break;
             case MAP_FOLLOWING:
                 this.recentsType = true;
@@ -238,34 +394,53 @@ public class MoodList implements Serializable {
         }
     }
 
-    private MoodList(User user, QueryType queryType, MoodListListener initListener, Object filter) {
+    private MoodList(User user, QueryType queryType, MoodListListener initListener, Object filter, int pageSize) {
         this.user = user;
+        this.pageSize = pageSize;
         this.queryType = queryType;
         this.listener = initListener;
-        this.moodEvents = new ArrayList<MoodEvent>();
+        this.moodEvents = new MoodStore();
         this.followings = new ArrayList<String>();
         this.userDocRef = user.getUserDocRef();
         this.db = FirebaseFirestore.getInstance();
         this.followingRef = userDocRef.collection("following");
         this.moodEventsRef = userDocRef.collection("mood_events");
         this.moodEventsRecentRef = db.collection("most_recent_moods");
+        this.recentMoods = new RecentMoods(db, user.getUsername());
         this.ptrToSelf = this;
         this.filter = filter;
+        this.shared = null;
+        this.subscribers = initListener instanceof Subscribers ? (Subscribers) initListener : null;
+        if (reasonQueryTypes.contains(queryType)) {
+            this.reasonFilterLowercase = TriggerIndex.lowercase((String) filter);
+        }
         switch (queryType) {
             case HISTORY_STATE:
-                getQuery();
-                attachMoodEventsListener(this.query);
+                attachQueryListeners();
                 break;
             case FOLLOWING_STATE:
                 this.recentsType = true;
                 attachFollowersListener();
                 break;
             case HISTORY_REASON:
-                getQuery();
-                attachMoodEventsListener(this.query);
+                answerFromIndex();
+                // Events written before trigger_tokens existed have to get them before the query can rely on them
+                backfillTriggerTokens(userDocRef).whenCompleteAsync((ignored, e) -> {
+                    if (closed) {
+                        return;
+                    }
+                    if (e != null) {
+                        // Events without tokens would be missed, so every event is checked instead
+                        Log.w("Firestore", "Backfilling trigger tokens failed.", e);
+                    } else {
+                        narrowReasonByToken = true;
+                    }
+                    attachQueryListeners();
+                }, AppExecutors.getInstance().mainThread());
                 break;
             case FOLLOWING_REASON:
                 this.recentsType = true;
+                answerFromIndex();
                 attachFollowersListener();
                 break;
             case MAP_CLOSE:
@@ -275,7 +450,7 @@ public class MoodList implements Serializable {
                 break;
             case MAP_PERSONAL_CLOSE:
                 this.mapType = true;
-                executeGeoQuery(true);
+                attachGeoQuery();
                 break;
             default:
                 throw new IllegalArgumentException("unsupported query type: " + queryType);
@@ -283,278 +458,441 @@ public class MoodList implements Serializable {
 
     }
 
+    /**
+     * Subscribes to a shared query. The MoodList shows the events of the query and passes its
+     * writes to it, it gets returnMoodList right away if the query already delivered.
+     */
+    private MoodList(MoodList query, MoodListListener initListener) {
+        this.user = query.user;
+        this.pageSize = query.pageSize;
+        this.queryType = query.queryType;
+        this.listener = initListener;
+        this.moodEvents = query.moodEvents;
+        this.followings = query.followings;
+        this.userDocRef = query.userDocRef;
+        this.db = query.db;
+        this.followingRef = query.followingRef;
+        this.moodEventsRef = query.moodEventsRef;
+        this.moodEventsRecentRef = query.moodEventsRecentRef;
+        this.recentMoods = query.recentMoods;
+        this.ptrToSelf = this;
+        this.filter = query.filter;
+        this.writeAllowed = query.writeAllowed;
+        this.recentsType = query.recentsType;
+        this.mapType = query.mapType;
+        this.shared = query;
+        this.subscribers = null;
+        query.subscribers.moodLists.add(this);
+        openMoodLists.incrementAndGet();
+        AppExecutors.getInstance().mainThread().execute(() -> {
+            if (closed || returned) {
+                return;
+            }
+            if (query.isMade || query.answeredFromIndex) {
+                queryReturned();
+                if (!dontUpdate) {
+                    listener.updatedMoodList();
+                }
+                if (query.syncStateReported) {
+                    listener.onSyncStateChanged(query.fromCache, query.pendingWrites);
+                }
+            } else if (query.subscribers.pendingError != null) {
+                listener.onError(query.subscribers.pendingError);
+            }
+        });
+    }
+
+    /**
+     * Called on a subscriber when the shared query delivered its events for the first time.
+     */
+    private void queryReturned() {
+        if (returned || closed) {
+            return;
+        }
+        returned = true;
+        listener.returnMoodList(ptrToSelf);
+    }
+
+    /**
+     * Called on a subscriber when the events of the shared query changed.
+     *
+     * @param delta The changes of the query, null if they aren't known
+     */
+    private void queryUpdated(MoodListDelta delta) {
+        if (!returned || closed || dontUpdate) {
+            return;
+        }
+        if (delta == null) {
+            listener.updatedMoodList();
+        } else {
+            listener.updatedMoodList(delta);
+        }
+    }
+
     /**
      * Adds a new MoodEvent to the list and updates Firestore.
      * This method ensures the event is valid, assigns it a unique ID, and updates the most recent event if necessary.
+     * A failed write is reported to the listener through onError.
      *
      * @param event The MoodEvent to add.
      * @throws IllegalArgumentException If the MoodList is read-only or the event's username does not match the user.
      * @throws RuntimeException If the event cannot be stored due to invalid data or Firestore errors.
      */
     public void addMoodEvent(MoodEvent event) {
+        if (shared != null) {
+            shared.addMoodEvent(event);
+            return;
+        }
         if(!this.writeAllowed){
             throw new IllegalArgumentException("cannot add events to read only MoodList");
         }
+        writeNewMoodEvent(user, moodEventsRef, recentMoods, event).whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                Log.w("Firestore", "Adding mood event failed.", e);
+                listener.onError(asException(e));
+            }
+        }, AppExecutors.getInstance().mainThread());
+        if(!dontUpdate) {
+            listener.updatedMoodList();
+        }
+    }
+    /**
+     * Stores a new MoodEvent of a user without opening a MoodList, for screens that only write an
+     * event and never show the history. No snapshot listener is attached, open MoodLists of the
+     * user pick the event up through their own listeners.
+     *
+     * @param user  The user the event belongs to.
+     * @param event The MoodEvent to store, it gets a new ID.
+     * @return A future completed once the event and, if it is public, recent_moods are stored.
+     * @throws IllegalArgumentException If the event's username does not match the user or the event is invalid.
+     */
+    public static CompletableFuture<Void> storeMoodEvent(User user, MoodEvent event) {
+        return writeNewMoodEvent(user, user.getUserDocRef().collection("mood_events"),
+                new RecentMoods(FirebaseFirestore.getInstance(), user.getUsername()), event);
+    }
+
+    /**
+     * Gives a new event an ID and writes it, then adds it to recent_moods if it is public.
+     *
+     * @param user          The user the event belongs to
+     * @param moodEventsRef The mood_events collection of the user
+     * @param recentMoods   The recent_moods projection of the user
+     * @param event         The event
+     * @return A future completed once the event and, if it is public, recent_moods are stored
+     * @throws IllegalArgumentException If the event's username does not match the user or the event is invalid.
+     */
+    private static CompletableFuture<Void> writeNewMoodEvent(User user, CollectionReference moodEventsRef,
+                                                             RecentMoods recentMoods, MoodEvent event) {
         if(event.getUsername() != null && !event.getUsername().equals(user.getUsername())){
             throw new IllegalArgumentException("username of event does not match username of user");
         }
-        String id = this.moodEventsRef.document().getId();
-        DocumentReference moodEventDocRef = moodEventsRef.document(id);
+        DocumentReference moodEventDocRef = moodEventsRef.document();
         event.setIdFromDocRef(moodEventDocRef);
         Map<String,Object> eventMap = event.toFireStoreMap();
-        if(!this.isPersonalEventMapValid(eventMap)){
+        if(!isPersonalEventMapValid(eventMap)){
             throw new IllegalArgumentException("this event has invalid date or emotional_state");
-        } else {
-            moodEventDocRef.set(eventMap);
-        }
-        if(event.getIsPublic()){
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            executor.execute(() -> {
-                try {
-                    recentSemi.acquire();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-                CollectionReference recentEventDocRef = this.moodEventsRecentRef.document(this.user.getUsername()).collection("recent_moods");
-                recentEventDocRef.get().addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-                    @Override
-                    public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                        Map<String, Timestamp> current_recents = new HashMap<>();
-                        boolean allValid = true;
-                        if (task.isSuccessful()) {
-                            for (QueryDocumentSnapshot document : task.getResult()) {
-                                // Access the document data
-                                String documentId = document.getId();
-                                Object timestamp = document.get("date");
-                                if (timestamp != null && timestamp instanceof Timestamp) {
-                                    current_recents.put(documentId, (Timestamp) timestamp);
-                                } else {
-                                    allValid = false;
-                                    break;
-                                }
-                            }
-                            if (current_recents.size() >= 3) {
-                                if (allValid) {
-                                    Timestamp leastRecentTime = null;
-                                    String leastRecentKey = null;
-                                    for (Map.Entry<String, Timestamp> entry : current_recents.entrySet()) {
-                                        Timestamp currentTimestamp = entry.getValue();
-                                        // If leastRecentTimestamp is null or currentTimestamp is older than leastRecentTimestamp
-                                        if (leastRecentTime == null || currentTimestamp.compareTo(leastRecentTime) < 0) {
-                                            leastRecentTime = currentTimestamp;
-                                            leastRecentKey = entry.getKey();
-                                        }
-                                    }
-                                    //if the new event is more recent than the old recent one
-                                    if (event.getTimestamp().compareTo(leastRecentTime) > 0) {
-                                        Map<String, Object> eventMap = event.toFireStoreMap();
-                                        eventMap.put("username", user.getUsername());
-                                        eventMap.put("mood_id", id);
-                                        if (!ptrToSelf.isRecentEventMapValid(eventMap)) {
-                                            //this error should only occur under extreme circumstances
-                                            //if this becomes an issue, a clone method on the event should be used
-                                            listener.onError(new RuntimeException("recent event is invalid"));
-                                            return;
-                                        }
-                                        try {
-                                            Tasks.await(recentEventDocRef.document(leastRecentKey).delete());
-                                        } catch (Exception e) {
-                                            listener.onError(e);
-                                        }
-                                        try {
-                                            Tasks.await(recentEventDocRef.document(event.getId()).set(eventMap));
-                                        } catch (Exception e) {
-                                            listener.onError(e);
-                                        }
-                                        ptrToSelf.recentSemi.release();
-                                    }
-                                } else {
-                                    ptrToSelf.recentSemi.release();
-                                    listener.onError(new IllegalArgumentException("the recent document for the user has an invalid timestamp"));
-                                }
-
-                            } else {
-                                // Document does not exist, thus should be set
-                                Map<String, Object> eventMap = event.toFireStoreMap();
-                                eventMap.put("username", user.getUsername());
-                                eventMap.put("mood_id", id);
-                                if (!ptrToSelf.isRecentEventMapValid(eventMap)) {
-                                    //this error should only occur under extreme circumstances
-                                    //if this becomes an issue, a clone method on the event should be used
-                                    throw new RuntimeException("the event map was incorrectly formatted");
-                                }
-                                try {
-                                    Tasks.await(recentEventDocRef.document(event.getId()).set(eventMap));
-                                } catch (Exception e) {
-                                    listener.onError(e);
-                                }
-                                ptrToSelf.recentSemi.release();
-                            }
-                        } else {
-                            // Handle any errors that occurred while fetching the document
-                            Exception e = task.getException();
-                            if (e != null) {
-                                ptrToSelf.recentSemi.release();
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                });
-            });
         }
-        Collections.sort(moodEvents, new Comparator<MoodEvent>() {
-            @Override
-            public int compare(MoodEvent o1, MoodEvent o2) {
-                return o2.getTimestamp().compareTo(o1.getTimestamp());
-            }
-        });
-        if(!dontUpdate) {
-            listener.updatedMoodList();
+        CompletableFuture<Void> stored = AppExecutors.toFuture(moodEventDocRef.set(eventMap));
+        if (!event.getIsPublic()) {
+            return stored;
         }
+        Map<String, Object> recentMap = recentMapOf(user.getUsername(), event);
+        // recent_moods must not point at an event that failed to store
+        return stored.thenCompose(ignored -> recentMoods.add(moodEventDocRef.getId(), recentMap));
     }
+
     /**
      * Deletes a MoodEvent from the list and Firestore.
-     * If the deleted event is the most recent, it updates the most recent event in Firestore.
+     * The event is removed from the list right away. The recent_moods update and the read of the
+     * comments run at the same time, then the comments and the event are deleted in batches while
+     * the picture is deleted from storage. If deleting the event fails it is put back in the list
+     * and the listener is told through onError, a deleted picture is not restored.
      *
      * @param event The MoodEvent to delete.
      * @throws IllegalArgumentException If the MoodList is read-only or the event does not have an ID.
-     * @throws RuntimeException If Firestore operations fail or the event cannot be deleted.
+     * @throws RuntimeException If the event cannot be found in the MoodList.
      */
     public void deleteMoodEvent(MoodEvent event) {
+        deleteMoodEvents(Collections.singletonList(event));
+    }
+
+    /**
+     * Adds many new MoodEvents at once, for example when importing a mood history from another app.
+     * Every event is validated before anything is written. The events are written in batches,
+     * recent_moods is updated once for all of them after they are stored and the listener gets a
+     * single update once everything is stored.
+     *
+     * @param events The MoodEvents to add.
+     * @return A future completed once the events and recent_moods are stored.
+     * @throws IllegalArgumentException If the MoodList is read-only, the username of an event does not match the user or an event is invalid.
+     * @throws RuntimeException If an event cannot be stored due to invalid data.
+     */
+    public CompletableFuture<Void> addMoodEvents(Collection<MoodEvent> events) {
+        if (shared != null) {
+            return shared.addMoodEvents(events);
+        }
+        if(!this.writeAllowed){
+            throw new IllegalArgumentException("cannot add events to read only MoodList");
+        }
+        for (MoodEvent event : events) {
+            if(event.getUsername() != null && !event.getUsername().equals(user.getUsername())){
+                throw new IllegalArgumentException("username of event does not match username of user");
+            }
+        }
+        List<Consumer<WriteBatch>> writes = new ArrayList<>();
+        List<MoodEvent> publicEvents = new ArrayList<>();
+        for (MoodEvent event : events) {
+            DocumentReference moodEventDocRef = moodEventsRef.document();
+            event.setIdFromDocRef(moodEventDocRef);
+            Map<String,Object> eventMap = event.toFireStoreMap();
+            if(!isPersonalEventMapValid(eventMap)){
+                throw new IllegalArgumentException("this event has invalid date or emotional_state");
+            }
+            writes.add(batch -> batch.set(moodEventDocRef, eventMap));
+            if(event.getIsPublic()){
+                publicEvents.add(event);
+            }
+        }
+        // Only the newest public events can end up in recent_moods
+        publicEvents.sort(MoodStore.NEWEST_FIRST);
+        Map<String, Map<String, Object>> recentMaps = new HashMap<>();
+        for (MoodEvent event : publicEvents.subList(0, Math.min(RecentMoods.MAX_RECENT, publicEvents.size()))) {
+            recentMaps.put(event.getId(), recentMapOf(event));
+        }
+
+        holdSnapshots();
+        // recent_moods must not point at events that failed to store
+        CompletableFuture<Void> stored = commitInBatches(writes)
+                .thenCompose(ignored -> recentMaps.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : recentMoods.add(recentMaps));
+        return finishBulkWrite(stored, true);
+    }
+
+    /**
+     * Deletes many MoodEvents at once, see {@link #deleteMoodEvent(MoodEvent)}.
+     * The events are removed from the list right away with a single update to the listener. The
+     * comments of every event are read at the same time, then the comments and events are deleted
+     * in batches and recent_moods is updated once for all of them. Events that could not be deleted
+     * are put back in the list.
+     *
+     * @param events The MoodEvents to delete.
+     * @return A future completed once the events, their comments and pictures and recent_moods are updated.
+     * @throws IllegalArgumentException If the MoodList is read-only or an event does not have an ID or is not in the MoodList.
+     */
+    public CompletableFuture<Void> deleteMoodEvents(Collection<MoodEvent> events) {
+        if (shared != null) {
+            return shared.deleteMoodEvents(events);
+        }
         if (!this.writeAllowed) {
             throw new IllegalArgumentException("Cannot delete events from a read-only MoodList.");
         }
-        if (event.getId() == null) {
-            throw new IllegalArgumentException("Event must have an ID to be deleted.");
-        }
-        if(!this.containsMoodEvent(event)){
-            throw new IllegalArgumentException("Event does not exist in MoodList deleted.");
-        } else if(!this.moodEvents.contains(event)){
-            event = this.getMoodEventOfSameID(event);
-            if(event == null){
-                throw new RuntimeException("This shouldn't happen");
+        LinkedHashMap<String, MoodEvent> toDelete = new LinkedHashMap<>();
+        for (MoodEvent event : events) {
+            if (event.getId() == null) {
+                throw new IllegalArgumentException("Event must have an ID to be deleted.");
             }
+            if(!this.containsMoodEvent(event)){
+                throw new IllegalArgumentException("Event does not exist in MoodList deleted.");
+            }
+            // The stored event may be a different reference for the same mood event
+            toDelete.put(event.getId(), this.getMoodEventOfSameID(event));
         }
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        MoodEvent finalEvent = event;
-        executor.execute(() -> {
-            try {
-                recentSemi.acquire();
-
-                // Remove from local list first to reflect deletion immediately
-                moodEvents.remove(finalEvent);
-
-                // Reference to recent_moods collection
-                CollectionReference recentEventDocRef = this.moodEventsRecentRef
-                        .document(this.user.getUsername())
-                        .collection("recent_moods");
-
-                // Check if the event is in recent_moods and handle accordingly
-                boolean isRecent = false;
-                HashSet<String> recentIds = new HashSet<>();
-                try {
-                    QuerySnapshot recentSnapshot = Tasks.await(recentEventDocRef.get());
-                    for (QueryDocumentSnapshot doc : recentSnapshot) {
-                        recentIds.add(doc.getId());
-                        if (doc.getId().equals(finalEvent.getId())) {
-                            isRecent = true;
-                        }
-                    }
-                } catch (Exception e) {
-                    listener.onError(e);
-                }
+        // Remove from local list first to reflect deletion immediately
+        MoodListDelta removal = new MoodListDelta();
+        for (String id : toDelete.keySet()) {
+            moodEvents.remove(id, removal);
+            reasonIndex.remove(indexScope(), id);
+        }
+        deliverLocalChange(removal);
+        holdSnapshots();
 
-                // If the event is a recent event, replace it before deleting
-                if (isRecent) {
-                    if (!moodEvents.isEmpty()) {
-                        // Sort to find the new most recent event
-                        Collections.sort(moodEvents, (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp()));
-                        int index = -1;
-                        for(int i = 0; i < moodEvents.size(); i++){
-                            if(recentIds.contains(moodEvents.get(i).getId()) || !moodEvents.get(i).getIsPublic()){
-                                continue;
-                            } else {
-                                index = i;
-                                break;
-                            }
-                        }
-                        if(index == -1){
-                            try {
-                                Tasks.await(recentEventDocRef.document(finalEvent.getId()).delete());
-                            } catch (Exception e) {
-                                listener.onError(e);
-                            }
-                        } else {
-                            MoodEvent newMostRecent = moodEvents.get(index);
-                            Map<String, Object> eventMap = newMostRecent.toFireStoreMap();
-                            eventMap.put("username", user.getUsername());
-                            eventMap.put("mood_id", newMostRecent.getId());
-
-                            // Update recent_moods with the new event and delete the old one
-                            try {
-                                Tasks.await(recentEventDocRef.document(newMostRecent.getId()).set(eventMap));
-                                Tasks.await(recentEventDocRef.document(finalEvent.getId()).delete());
-                            } catch (Exception e) {
-                                listener.onError(e);
-                            }
-                        }
-                    } else {
-                        // No events left, delete from recent_moods
-                        try {
-                            Tasks.await(recentEventDocRef.document(finalEvent.getId()).delete());
-                        } catch (Exception e) {
-                            listener.onError(e);
-                        }
-                    }
+        // The recent_moods update doesn't depend on the comments, so both start now
+        CompletableFuture<Void> recentDone = recentMoods.remove(toDelete.keySet(), recentCandidates());
+        List<CompletableFuture<QuerySnapshot>> commentReads = new ArrayList<>();
+        for (String id : toDelete.keySet()) {
+            commentReads.add(AppExecutors.toFuture(moodEventsRef.document(id).collection("comments").get()));
+        }
+        CompletableFuture<Void> readsDone = CompletableFuture.allOf(commentReads.toArray(new CompletableFuture[0]));
+
+        // Have to delete all comments manually when deleting a moodEvent, fault of firestore client side
+        // An event is deleted after its comments so a failed batch never leaves comments without their event
+        CompletableFuture<Void> eventsDone = readsDone.thenCompose(ignored -> {
+            List<Consumer<WriteBatch>> deletes = new ArrayList<>();
+            int i = 0;
+            for (String id : toDelete.keySet()) {
+                for (DocumentSnapshot comment : commentReads.get(i++).join().getDocuments()) {
+                    deletes.add(batch -> batch.delete(comment.getReference()));
                 }
-                // Have to delete all comments manually when deleting a moodEvent, fault of firestore client side
-                if(finalEvent.hasComments(user.getUsername()).equals("yes")){
-                    try {
-                        QuerySnapshot comments = Tasks.await(moodEventsRef.document(finalEvent.getId()).collection("comments").get());
-                        for(DocumentSnapshot doc: comments){
-                            doc.getReference().delete();
-                        }
-                    } catch (Exception e) {
-                        listener.onError(e);
-                    }
+                deletes.add(batch -> batch.delete(moodEventsRef.document(id)));
+            }
+            return commitInBatches(deletes);
+        });
+        // The pictures are only deleted once the deletes are being committed, so a failed read keeps them
+        CompletableFuture<Void> picturesDone = readsDone.thenCompose(ignored -> {
+            List<CompletableFuture<Void>> pictureDeletes = new ArrayList<>();
+            for (MoodEvent event : toDelete.values()) {
+                if (event.getPicture() != null) {
+                    pictureDeletes.add(AppExecutors.toFuture(
+                            FirebaseStorage.getInstance().getReference(event.getPicture()).delete()));
                 }
+            }
+            return CompletableFuture.allOf(pictureDeletes.toArray(new CompletableFuture[0]));
+        });
+        eventsDone.whenComplete((ignored, e) -> {
+            if (e != null) {
+                // The batches that failed are unknown, so restore the events that still exist
+                recentDone.whenComplete((done, ignoredError) -> restoreExisting(toDelete.values()));
+            }
+        });
+        return finishBulkWrite(CompletableFuture.allOf(eventsDone, recentDone, picturesDone), false);
+    }
 
-                // Delete from the main collection regardless of recent processing
-                try {
-                    Tasks.await(moodEventsRef.document(finalEvent.getId()).delete());
-                } catch (Exception e) {
-                    listener.onError(e);
+    /**
+     * Puts deleted events back into the list and recent_moods if their documents still exist.
+     *
+     * @param events The events that may not have been deleted
+     */
+    private void restoreExisting(Collection<MoodEvent> events) {
+        for (MoodEvent event : events) {
+            AppExecutors.toFuture(moodEventsRef.document(event.getId()).get()).whenCompleteAsync((document, e) -> {
+                if (e != null || !document.exists() || moodEvents.contains(event.getId())) {
+                    return;
                 }
-
-                // Delete picture from storage
-                if(finalEvent.getPicture() != null) {
-                    try {
-                        FirebaseStorage storage = FirebaseStorage.getInstance();
-                        Tasks.await(storage.getReference(finalEvent.getPicture()).delete());
-                    } catch (Exception e) {
-                        listener.onError(e);
-                    }
+                MoodListDelta rollback = new MoodListDelta();
+                moodEvents.upsert(event, rollback);
+                reasonIndex.put(indexScope(), event);
+                deliverLocalChange(rollback);
+                if (event.getIsPublic()) {
+                    // The event may have left recent_moods already
+                    recentMoods.add(event.getId(), recentMapOf(event));
                 }
+            }, AppExecutors.getInstance().mainThread());
+        }
+    }
 
+    /**
+     * Holds back snapshot updates to the listener while a bulk write is running, so the batches of
+     * the write don't each cause an update.
+     */
+    private void holdSnapshots() {
+        bulkWrites++;
+    }
 
-                // Update the local list and notify listener
-                Collections.sort(moodEvents, (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp()));
-                if (!dontUpdate) {
-                    listener.updatedMoodList();
-                }
+    /**
+     * Ends a bulk write once it is done, reporting a failure to the listener.
+     *
+     * @param done   Completed when the bulk write is done
+     * @param notify True to send the listener one update for the whole write
+     * @return A future completed after the listener was notified
+     */
+    private CompletableFuture<Void> finishBulkWrite(CompletableFuture<Void> done, boolean notify) {
+        return done.whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                Log.w("Firestore", "Bulk write of mood events failed.", e);
+                listener.onError(asException(e));
+            }
+            bulkWrites--;
+            if (bulkWrites == 0 && (notify || heldSnapshot) && !dontUpdate) {
+                listener.updatedMoodList();
+            }
+            if (bulkWrites == 0) {
+                heldSnapshot = false;
+            }
+        }, AppExecutors.getInstance().mainThread());
+    }
+    /**
+     * Commits writes in batches of at most {@link #MAX_BATCH_SIZE}. Every batch but the one holding
+     * the last write is committed at the same time, the last batch is committed after they succeed.
+     *
+     * @param writes The writes, each adds one operation to a batch
+     * @return A future completed once every batch is committed
+     */
+    private CompletableFuture<Void> commitInBatches(List<Consumer<WriteBatch>> writes) {
+        if (writes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int lastStart = (writes.size() - 1) / MAX_BATCH_SIZE * MAX_BATCH_SIZE;
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        for (int start = 0; start < lastStart; start += MAX_BATCH_SIZE) {
+            commits.add(commitBatch(writes.subList(start, start + MAX_BATCH_SIZE)));
+        }
+        return CompletableFuture.allOf(commits.toArray(new CompletableFuture[0]))
+                .thenCompose(ignored -> commitBatch(writes.subList(lastStart, writes.size())));
+    }
+
+    private CompletableFuture<Void> commitBatch(List<Consumer<WriteBatch>> writes) {
+        WriteBatch batch = db.batch();
+        for (Consumer<WriteBatch> write : writes) {
+            write.accept(batch);
+        }
+        return AppExecutors.toFuture(batch.commit());
+    }
+
+    /**
+     * Builds the recent_moods document of a public event.
+     *
+     * @param event The event
+     * @return The document
+     * @throws RuntimeException If the event can't be stored in recent_moods
+     */
+    private Map<String, Object> recentMapOf(MoodEvent event) {
+        return recentMapOf(user.getUsername(), event);
+    }
+
+    private static Map<String, Object> recentMapOf(String username, MoodEvent event) {
+        Map<String, Object> recentMap = event.toFireStoreMap();
+        recentMap.put("username", username);
+        recentMap.put("mood_id", event.getId());
+        if (!isRecentEventMapValid(recentMap)) {
+            //this error should only occur under extreme circumstances
+            //if this becomes an issue, a clone method on the event should be used
+            throw new RuntimeException("the event map was incorrectly formatted");
+        }
+        return recentMap;
+    }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                listener.onError(e);
-            } finally {
-                recentSemi.release();
+    /**
+     * The newest public events of the list, which can refill recent_moods after a delete.
+     * The store is date ordered so these are its first public events.
+     *
+     * @return The recent_moods documents of the candidates, by id
+     */
+    private Map<String, Map<String, Object>> recentCandidates() {
+        Map<String, Map<String, Object>> candidates = new HashMap<>();
+        for (int i = 0; i < moodEvents.size() && candidates.size() < RecentMoods.MAX_RECENT; i++) {
+            MoodEvent candidate = moodEvents.getAt(i);
+            if (candidate.getIsPublic()) {
+                candidates.put(candidate.getId(), recentMapOf(candidate));
             }
-        });
+        }
+        return candidates;
+    }
+
+    /**
+     * Notifies the listener of a change this MoodList made to itself before Firestore confirmed it.
+     *
+     * @param delta The changes that were made
+     */
+    private void deliverLocalChange(MoodListDelta delta) {
+        if (!closed && !dontUpdate && !delta.isEmpty()) {
+            listener.updatedMoodList(delta);
+        }
+    }
+
+    private static Exception asException(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof Exception ? (Exception) e : new RuntimeException(e);
     }
     /**
      * Edits an existing MoodEvent and updates Firestore.
      * This method applies the specified changes to the event and ensures the updates are valid.
+     * Only the fields that changed are written, with an update to the event document and, if the
+     * event is in recent_moods, to its recent document. Edits made while an edit of the same event
+     * is still being written are combined into one write.
      *
      * @param event   The MoodEvent to edit.
      * @param changes A map of key-value pairs representing the changes to apply.
@@ -564,6 +902,10 @@ public class MoodList implements Serializable {
      * @throws RuntimeException If Firestore operations fail or the event cannot be updated.
      */
     public void editMoodEvent(MoodEvent event, Map<String, Object> changes) {
+        if (shared != null) {
+            shared.editMoodEvent(event, changes);
+            return;
+        }
         if(!this.writeAllowed){
             throw new IllegalArgumentException("cannot add events to read only MoodList");
         }
@@ -572,73 +914,207 @@ public class MoodList implements Serializable {
         }
         if(!containsMoodEvent(event)){
             throw new IllegalArgumentException("mood event is not in MoodList");
-        } else if (!this.moodEvents.contains(event)){
+        } else if (this.moodEvents.get(event.getId()) != event){
             event = this.getMoodEventOfSameID(event);
             if(event == null){
                 throw new RuntimeException("This shouldn't happen");
             }
         }
-        Map<String,Object> map = event.toFireStoreMap();
-        final List<Task<DocumentSnapshot>> tasks = new ArrayList<>();
-        tasks.add(this.moodEventsRef.document(event.getId()).get());
-        tasks.add(this.moodEventsRecentRef.document(user.getUsername()).collection("recent_moods").document(event.getId()).get());
-        DocumentReference recentMoodDocRef = this.moodEventsRecentRef.document(user.getUsername()).collection("recent_moods").document(event.getId());
-        updateEventFromMap(event,changes);
-        MoodEvent finalEvent = event;
-        Tasks.whenAllComplete(tasks).addOnCompleteListener(new OnCompleteListener<List<Task<?>>>() {
-            @Override
-            public void onComplete(@NonNull Task<List<Task<?>>> t) {
-                Map<DocumentReference, DocumentSnapshot> docMap = new HashMap<>();
-
-                // Process the results here if needed
-                for (Task<?> task : tasks) {
-                    if (task.isSuccessful() && task.getResult() instanceof DocumentSnapshot) {
-                        DocumentSnapshot doc = (DocumentSnapshot) task.getResult();
-                        if (doc.getReference().equals(ptrToSelf.moodEventsRef.document(finalEvent.getId()))) {
-                            docMap.put(ptrToSelf.moodEventsRef.document(finalEvent.getId()), doc);
-                        } else if (doc.getReference().equals(recentMoodDocRef)) {
-                            docMap.put((recentMoodDocRef), doc);
-                        }
-                    }
-                }
-                DocumentSnapshot personalDoc = docMap.get(ptrToSelf.moodEventsRef.document(finalEvent.getId()));
-                DocumentSnapshot recentDoc = docMap.get(recentMoodDocRef);
-                if(personalDoc == null){
-                    listener.onError(new IllegalArgumentException("no document related to this mood event"));
-                    return;
-                }
-                Map<String,Object> eventMap  = finalEvent.toFireStoreMap();
-                if(!ptrToSelf.isPersonalEventMapValid(eventMap)){
-                    listener.onError(new IllegalArgumentException("the eventMap is bad value(s)"));
-                    return;
-                }
-                eventMap.remove("username");
-                ptrToSelf.moodEventsRef.document(finalEvent.getId()).set(eventMap);
-                if (personalDoc != null && personalDoc.exists() && recentDoc != null && recentDoc.exists()){
-                    if(personalDoc.get("mood_id").equals(recentDoc.get("mood_id"))){
-                        eventMap.put("username", user.getUsername());
-                        eventMap.put("mood_id", finalEvent.getId());
-                        if(!ptrToSelf.isRecentEventMapValid(eventMap)){
-                            listener.onError(new IllegalArgumentException("the eventMap has bad value(s)"));
-                            return;
-                        }
-                        recentMoodDocRef.set(eventMap);
-                    }
+        String id = event.getId();
+        // The changes are validated on a copy, so a bad edit leaves the event and the indexes untouched
+        MoodEvent edited = copyOf(event);
+        updateEventFromMap(edited,changes);
+        Map<String,Object> before = event.toFireStoreMap();
+        before.remove("username");
+        Map<String,Object> after = edited.toFireStoreMap();
+        after.remove("username");
+        if(!isPersonalEventMapValid(after)){
+            listener.onError(new IllegalArgumentException("the eventMap is bad value(s)"));
+            return;
+        }
+        Map<String,Object> diff = diffOf(before, after);
+        if(diff.isEmpty()){
+            return;
+        }
 
-                }
-                if(!ptrToSelf.dontUpdate){
-                    listener.updatedMoodList();
-                }
-            }
-        });
-    }
-    //Set this to true if you don't want the update listener to be called
-    public void setDontUpdate(boolean bool){
-        this.dontUpdate = bool;
+        // Kept until the edit is stored, so a rejected edit can be undone
+        if (!storedStates.containsKey(id)) {
+            storedStates.put(id, copyOf(event));
+        }
+        int oldPos = moodEvents.indexOf(id);
+        updateEventFromMap(event,changes);
+        if(changes.containsKey("date")){
+            //the event was mutated in place so its spot in the date index may have changed
+            moodEvents.reposition(id);
+        }
+        reasonIndex.put(indexScope(), event);
+        MoodListDelta edit = new MoodListDelta();
+        int newPos = moodEvents.indexOf(id);
+        if(oldPos != newPos){
+            edit.moved(oldPos, newPos);
+        }
+        edit.changed(newPos);
+        deliverLocalChange(edit);
+        writeEdit(id, diff);
     }
 
+    /**
+     * Writes the changed fields of an edited event, or merges them into the next write if an edit of
+     * the event is already being written. If a write fails the event is put back in the state it was
+     * last stored in before the listener is told.
+     *
+     * @param id      The id of the event
+     * @param changes The changed fields, {@link FieldValue#delete()} for removed ones
+     */
+    private void writeEdit(String id, Map<String, Object> changes) {
+        if (editsInFlight.contains(id)) {
+            Map<String, Object> pending = pendingEdits.get(id);
+            if (pending == null) {
+                pending = new HashMap<>();
+                pendingEdits.put(id, pending);
+            }
+            pending.putAll(changes);
+            return;
+        }
+        editsInFlight.add(id);
+        MoodEvent event = moodEvents.get(id);
+        MoodEvent written = event == null ? null : copyOf(event);     //the state of the event once this write is stored
+        CompletableFuture<Void> personalDone = AppExecutors.toFuture(moodEventsRef.document(id).update(changes));
+        CompletableFuture<Void> recentDone = mirrorEdit(id, changes);
+        CompletableFuture.allOf(personalDone, recentDone).whenCompleteAsync((ignored, e) -> {
+            editsInFlight.remove(id);
+            Map<String, Object> pending = pendingEdits.remove(id);
+            if (e != null) {
+                Log.w("Firestore", "Editing mood event failed.", e);
+                // The edits waiting for this one build on it, so they are undone with it
+                restoreEvent(id, storedStates.remove(id));
+                listener.onError(asException(e));
+                return;
+            }
+            if (pending != null) {
+                if (written != null) {
+                    storedStates.put(id, written);
+                }
+                writeEdit(id, pending);
+            } else {
+                storedStates.remove(id);
+            }
+        }, AppExecutors.getInstance().mainThread());
+    }
+
+    /**
+     * Mirrors an edit to recent_moods. A changed date can change which events are recent, so it goes
+     * through a RecentMoods transaction, any other edit only updates the recent document if the event
+     * is known to be recent.
+     *
+     * @param id      The id of the event
+     * @param changes The changed fields
+     * @return A future completed once recent_moods is updated
+     */
+    private CompletableFuture<Void> mirrorEdit(String id, Map<String, Object> changes) {
+        MoodEvent event = moodEvents.get(id);
+        if (event == null || !event.getIsPublic()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (changes.containsKey("date")) {
+            return recentMoods.replace(id, recentMapOf(event), recentCandidates());
+        }
+        Boolean projected = recentMoods.isProjected(id);
+        if (projected == null) {
+            // No transaction ran yet, the newest public events of the list are the recent ones
+            projected = recentCandidates().containsKey(id);
+        }
+        return projected ? recentMoods.mirror(id, changes) : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return a copy of the stored fields of an event, comments are not copied
+     */
+    private static MoodEvent copyOf(MoodEvent event) {
+        MoodEvent copy = new MoodEvent(event.getId());
+        copyFields(event, copy);
+        return copy;
+    }
+
+    private static void copyFields(MoodEvent from, MoodEvent to) {
+        to.setUsername(from.getUsername());
+        to.setEmotionalState(from.getEmotionalState());
+        to.setTimestamp(from.getTimestamp());
+        to.setTrigger(from.getTrigger());
+        to.setSocialSituation(from.getSocialSituation());
+        to.setPicture(from.getPicture());
+        to.setLocation(from.getLocation());
+        to.setIsPublic(from.getIsPublic());
+    }
+
+    /**
+     * Puts an event back in the state it was stored in after an edit of it was rejected.
+     *
+     * @param id     The id of the event
+     * @param stored The stored state, nothing is restored if it is null
+     */
+    private void restoreEvent(String id, MoodEvent stored) {
+        MoodEvent event = moodEvents.get(id);
+        if (stored == null || event == null) {
+            return;
+        }
+        int oldPos = moodEvents.indexOf(id);
+        copyFields(stored, event);
+        moodEvents.reposition(id);
+        reasonIndex.put(indexScope(), event);
+        MoodListDelta restore = new MoodListDelta();
+        int newPos = moodEvents.indexOf(id);
+        if (oldPos != newPos) {
+            restore.moved(oldPos, newPos);
+        }
+        restore.changed(newPos);
+        deliverLocalChange(restore);
+    }
+
+    /**
+     * Finds the fields that differ between two firestore maps of an event.
+     *
+     * @param before The map before the edit
+     * @param after  The map after the edit
+     * @return The changed fields with their new values, {@link FieldValue#delete()} for removed ones
+     */
+    private static Map<String, Object> diffOf(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> diff = new HashMap<>();
+        for (Map.Entry<String, Object> field : after.entrySet()) {
+            if (!Objects.equals(before.get(field.getKey()), field.getValue())) {
+                diff.put(field.getKey(), field.getValue());
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                diff.put(key, FieldValue.delete());
+            }
+        }
+        return diff;
+    }
+    //Set this to true if you don't want the update listener to be called
+    public void setDontUpdate(boolean bool){
+        this.dontUpdate = bool;
+    }
+
+    /**
+     * Returns a copy of the MoodEvents currently in the list, newest first.
+     * Use {@link #getMoodEventsView()} if a live list is needed, e.g. for an adapter.
+     *
+     * @return a new list containing the MoodEvents
+     */
     public ArrayList<MoodEvent> getMoodEvents() {
-        return moodEvents;
+        return new ArrayList<>(moodEvents.view());
+    }
+
+    /**
+     * Returns a read-only live view of the MoodEvents, already in reverse chronological order.
+     * The view changes as the MoodList is updated so callers never need to copy or sort it.
+     *
+     * @return a read-only list of MoodEvents ordered newest first
+     */
+    public List<MoodEvent> getMoodEventsView() {
+        return moodEvents.view();
     }
     /**
      * Attaches a Firestore listener to the user's "following" collection.
@@ -647,7 +1123,10 @@ public class MoodList implements Serializable {
      * @throws RuntimeException If the Firestore listener fails to attach or the user is not following anyone.
      */
     private void attachFollowersListener() {
-        followingRef.addSnapshotListener((value, error) -> {
+        followingRegistration = LiveListeners.track(followingRef.addSnapshotListener((value, error) -> {
+            if (closed) {
+                return;
+            }
             if (error != null) {
                 Log.e("Firestore", error.toString());
                 listener.onError(new RuntimeException("followers didn't attach"));
@@ -666,108 +1145,380 @@ public class MoodList implements Serializable {
             }
             if (!followingLoaded) {
                 if(ptrToSelf.queryType == QueryType.MAP_CLOSE){
-                    executeGeoQuery(false);
+                    attachGeoQuery();
                     followingLoaded = true;
                 } else {
-                    ptrToSelf.getQuery();
-                    attachMoodEventsListener(ptrToSelf.query);
+                    attachQueryListeners();
                     followingLoaded = true;
                 }
-            } else {
-                ptrToSelf.getQuery();
-                //if needed a listener call here for update to followers
+            } else if (queryExecutor != null) {
+                // Only the chunks of followings that changed are re-attached
+                queryExecutor.setKeys(followings);
+            } else if (geoEngine != null) {
+                // Only the bounds of the chunks of followings that changed are re-attached
+                geoEngine.query(geoQueries(), geoFilter);
             }
-        });
+        }));
     }
     /**
-     * Attaches a Firestore listener to the specified query to fetch MoodEvents.
-     * This method processes the query results, creates MoodEvent objects, and updates the MoodList.
-     *
-     * @param query The Firestore query to listen to.
-     * @throws RuntimeException If the Firestore listener fails to attach or the query results are invalid.
+     * Attaches the listeners for the query of this MoodList. For FOLLOWING_* and MAP_FOLLOWING
+     * types the followings are split into chunks that are listened to concurrently, if the
+     * MoodList is paged every chunk is paged on its own.
      */
-    private void attachMoodEventsListener(Query query) {
-        Log.d("Firestore", "attachMoodEventsListener() called");
-        query.addSnapshotListener(new EventListener<QuerySnapshot>() {
+    private void attachQueryListeners() {
+        queryExecutor = new ChunkedQueryExecutor(this::buildQuery, pageSize, new ChunkedQueryExecutor.Listener() {
             @Override
-            public void onEvent(QuerySnapshot queryDocumentSnapshots, FirebaseFirestoreException e) {
-                if (e != null) {
-                    // Handle errors
-                    Log.w("Firestore", "Listen failed.", e);
-                    listener.onError(new RuntimeException("moodEvents didn't attach"));
+            public void onPageSnapshot(QuerySource.Page page, QuerySnapshot snapshot, boolean firstSnapshot) {
+                if (!isMade) {
+                    // The first snapshots of every chunk are merged once all of them arrived
                     return;
                 }
-                if (queryDocumentSnapshots != null) {
-                    moodEvents.clear();
+                Log.d("Firestore", "Number of document changes retrieved: " + snapshot.getDocumentChanges().size());
+                MoodListDelta delta = new MoodListDelta();
+                if (firstSnapshot) {
+                    // The page may have been re-attached, drop what it held but no longer matches
+                    dropMissingPageEvents(page, snapshot, delta);
                 }
-                Log.d("Firestore", "Number of documents retrieved: " + queryDocumentSnapshots.size());
-                // Process the documents
-                for (DocumentSnapshot document : queryDocumentSnapshots) {
-                    if (document.exists()) {
-                        Map<String, Object> documentData = document.getData();
-                        String id = document.getId();
-                        MoodEvent moodEvent = new MoodEvent(id);
-                        if (isValidKeyPairDatatype(documentData, "emotional_state", Long.class)) {
-                            moodEvent.setEmotionalState(EmotionalState.fromCode((Long) documentData.get("emotional_state")));
-                        } else {
-                            listener.onError(new IllegalArgumentException("emotional state cannot be null"));
-                            return;
-                        }
-                        if (isValidKeyPairDatatype(documentData, "date", Timestamp.class)) {
-                            moodEvent.setTimestamp((Timestamp) documentData.get("date"));
-                        } else {
-                            listener.onError(new IllegalArgumentException("date cannot be null"));
-                            return;
-                        }
-                        if (isValidKeyPairDatatype(documentData, "username", String.class)) {
-                            moodEvent.setUsername((String) documentData.get("username"));
-                        } else if (recentsType) {
-                            listener.onError(new IllegalArgumentException("username cannot be null for querys of recentMoods or is not a String"));
-                            return;
-                        }
-                        if (isValidKeyPairDatatype(documentData, "trigger", String.class)) {
-                            moodEvent.setTrigger((String) documentData.get("trigger"));
-                        }
-                        if (isValidKeyPairDatatype(documentData, "social_situation", String.class)) {
-                            moodEvent.setSocialSituation((String) documentData.get("social_situation"));
-                        }
-                        if (isValidKeyPairDatatype(documentData, "location", String.class)) {
-                            GeoHash geoHash = new GeoHash((String) documentData.get("location"));
-                            moodEvent.setLocation(geoHash);
-                        } else if (mapType) {
-                            listener.onError(new IllegalArgumentException("location cannot be null for map query or is not a the correct datatype"));
-                            return;
-                        }
-                        if (isValidKeyPairDatatype(documentData, "picture", String.class)) {
-                            moodEvent.setPicture((String) documentData.get("picture"));
-                        }
-                        if (isValidKeyPairDatatype(documentData, "is_public", Boolean.class)) {
-                            moodEvent.setIsPublic((Boolean) documentData.get("is_public"));
-                        }
-                        if(!containsMoodEvent(moodEvent)) {
-                            moodEvents.add(moodEvent);
-                        }
-                    }
+                // Only the documents that changed since the last snapshot are parsed
+                for (DocumentChange change : snapshot.getDocumentChanges()) {
+                    applyPageChange(page, change, delta);
                 }
-                //runs the function to remove moodEvents that don't contain the reasonString
-                if (reasonQueryTypes.contains(ptrToSelf.queryType)){
-                    //filter should cast to String as the constructor ensures instanceOf
-                    reasonStringSearch((String) filter);
-                }
-                if (!isMade) {
-                    isMade = true;
-                    listener.returnMoodList(ptrToSelf);
+                deliverSnapshot(delta);
+                reportSyncState();
+            }
+
+            @Override
+            public void onReady() {
+                loadInitialEvents();
+                reportSyncState();
+            }
+
+            @Override
+            public void onSourceRetired(QuerySource source) {
+                MoodListDelta delta = new MoodListDelta();
+                Iterator<Map.Entry<String, QuerySource.Page>> iterator = pageOfEvent.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<String, QuerySource.Page> entry = iterator.next();
+                    if (entry.getValue().getSource() == source) {
+                        iterator.remove();
+                        moodEvents.remove(entry.getKey(), delta);
+                    }
                 }
-                if (moodEvents.isEmpty()) {
-                    Log.d("Firestore", "No moods found for this query.");
+                if (isMade) {
+                    deliverSnapshot(delta);
                 }
-                if (!dontUpdate) {
-                    listener.updatedMoodList();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w("Firestore", "Listen failed.", e);
+                listener.onError(new RuntimeException("moodEvents didn't attach"));
+            }
+        });
+        queryExecutor.start(recentsType ? followings : null);
+    }
+
+    /**
+     * Fills the MoodList from the first snapshots of every chunk, merged newest first,
+     * and hands it to the listener.
+     */
+    private void loadInitialEvents() {
+        ArrayList<MoodEvent> initialEvents = new ArrayList<>();
+        queryExecutor.forEachDocumentNewestFirst((page, document) -> {
+            MoodEvent moodEvent;
+            try {
+                moodEvent = parseMoodEvent(document);
+            } catch (IllegalArgumentException ex) {
+                listener.onError(ex);
+                return;
+            }
+            pageOfEvent.put(moodEvent.getId(), page);
+            reasonIndex.put(indexScope(), moodEvent);
+            //filter should cast to String as the constructor ensures instanceOf
+            if (reasonQueryTypes.contains(queryType) && !matchesReasonString(moodEvent, reasonFilterLowercase)) {
+                return;
+            }
+            initialEvents.add(moodEvent);
+        });
+        // Already in order so this is linear
+        moodEvents.reconcile(initialEvents);
+        deliverSnapshot(new MoodListDelta());
+    }
+
+    /**
+     * Applies a document change seen by a page listener. An event can be seen by two pages
+     * for a moment when its date is edited or its chunk is being replaced, so a removal is only
+     * applied if it comes from the page that last saw the event.
+     *
+     * @param page   The page that saw the change
+     * @param change The document change from a snapshot
+     * @param delta  The delta the resulting change is recorded in
+     */
+    private void applyPageChange(QuerySource.Page page, DocumentChange change, MoodListDelta delta) {
+        String id = change.getDocument().getId();
+        if (change.getType() == DocumentChange.Type.REMOVED) {
+            if (pageOfEvent.get(id) != page) {
+                // The event moved to another page
+                return;
+            }
+            pageOfEvent.remove(id);
+        } else {
+            pageOfEvent.put(id, page);
+        }
+        applyDocumentChange(change, delta);
+    }
+
+    /**
+     * Removes the events last seen by a page that are missing from its first snapshot.
+     * This covers removals made while the page was being re-attached.
+     *
+     * @param page     The page
+     * @param snapshot The first snapshot of the page listener
+     * @param delta    The delta the removals are recorded in
+     */
+    private void dropMissingPageEvents(QuerySource.Page page, QuerySnapshot snapshot, MoodListDelta delta) {
+        HashSet<String> present = new HashSet<>();
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            present.add(document.getId());
+        }
+        Iterator<Map.Entry<String, QuerySource.Page>> iterator = pageOfEvent.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, QuerySource.Page> entry = iterator.next();
+            if (entry.getValue() == page && !present.contains(entry.getKey())) {
+                iterator.remove();
+                moodEvents.remove(entry.getKey(), delta);
+            }
+        }
+    }
+
+    /**
+     * Notifies the listener after a snapshot was applied. The first snapshot is delivered through
+     * returnMoodList, later ones as a delta.
+     *
+     * @param delta The changes made by the snapshot
+     */
+    private void deliverSnapshot(MoodListDelta delta) {
+        if (closed) {
+            return;
+        }
+        if (!isMade) {
+            // The first snapshot is delivered as a whole, not as a delta
+            isMade = true;
+            if (!answeredFromIndex) {
+                listener.returnMoodList(ptrToSelf);
+            }
+            if (moodEvents.isEmpty()) {
+                Log.d("Firestore", "No moods found for this query.");
+            }
+            if (!dontUpdate) {
+                listener.updatedMoodList();
+            }
+            return;
+        }
+        if (bulkWrites > 0) {
+            // The listener gets one update once the bulk write is done
+            heldSnapshot |= !delta.isEmpty();
+            return;
+        }
+        if (!dontUpdate && !delta.isEmpty()) {
+            listener.updatedMoodList(delta);
+        }
+    }
+
+    /**
+     * Tells the listener if the events are from the cache or have pending writes, when that
+     * changed since it was last told.
+     */
+    private void reportSyncState() {
+        if (!isMade || closed || (queryExecutor == null && geoEngine == null)) {
+            return;
+        }
+        boolean cached = queryExecutor != null ? queryExecutor.isFromCache() : geoEngine.isFromCache();
+        boolean pending = queryExecutor != null ? queryExecutor.hasPendingWrites() : geoEngine.hasPendingWrites();
+        if (syncStateReported && cached == fromCache && pending == pendingWrites) {
+            return;
+        }
+        syncStateReported = true;
+        fromCache = cached;
+        pendingWrites = pending;
+        Log.d("Firestore", queryType + " events " + (cached ? "from cache" : "synced")
+                + (pending ? " with pending writes" : ""));
+        listener.onSyncStateChanged(cached, pending);
+    }
+
+    /**
+     * @return True if some events are from the on-device cache and weren't confirmed by the server yet
+     */
+    public boolean isFromCache() {
+        if (shared != null) {
+            return shared.isFromCache();
+        }
+        return fromCache;
+    }
+
+    /**
+     * @return True if some events have changes made on this device that the server didn't store yet
+     */
+    public boolean hasPendingWrites() {
+        if (shared != null) {
+            return shared.hasPendingWrites();
+        }
+        return pendingWrites;
+    }
+
+    /**
+     * Answers a reason search from the {@link ReasonIndex} right away, with the events seen by
+     * earlier MoodLists. The query of this MoodList then revalidates the answer, its first snapshot
+     * replaces the events and is delivered through updatedMoodList.
+     */
+    private void answerFromIndex() {
+        AppExecutors.getInstance().mainThread().execute(() -> {
+            if (isMade || closed) {
+                // The query was faster
+                return;
+            }
+            for (MoodEvent event : reasonIndex.search(indexScope(), reasonFilterLowercase)) {
+                if (recentsType && Boolean.FALSE.equals(FollowCache.getInstance().isFollowing(user.getUsername(), event.getUsername()))) {
+                    // The user was unfollowed since the event was seen
+                    continue;
                 }
+                moodEvents.upsert(event);
+            }
+            if (moodEvents.isEmpty()) {
+                return;
+            }
+            answeredFromIndex = true;
+            listener.returnMoodList(ptrToSelf);
+            if (!dontUpdate) {
+                listener.updatedMoodList();
             }
         });
     }
 
+    /**
+     * @return the scope of the ReasonIndex this MoodList sees events of
+     */
+    private String indexScope() {
+        return recentsType ? ReasonIndex.followingScope(user.getUsername()) : ReasonIndex.historyScope(user.getUsername());
+    }
+
+    /**
+     * Loads the next page of older events for a paged MoodList.
+     * The new events are delivered to the listener as a delta. A shared query is paged for every
+     * MoodList subscribed to it.
+     *
+     * @return True if a page is being loaded, false if the MoodList isn't paged or loaded yet,
+     *         a page is already loading or there are no older events.
+     */
+    public boolean loadMore() {
+        if (shared != null) {
+            return !closed && shared.loadMore();
+        }
+        if (pageSize <= 0 || !isMade || closed || queryExecutor == null) {
+            return false;
+        }
+        return queryExecutor.loadMore();
+    }
+
+    /**
+     * @return True if this MoodList was created with {@link #createPagedMoodList}
+     */
+    public boolean isPaged() {
+        return pageSize > 0;
+    }
+
+    /**
+     * @return True if the MoodList is paged and older events may exist that aren't loaded yet
+     */
+    public boolean hasMorePages() {
+        if (shared != null) {
+            return shared.hasMorePages();
+        }
+        return pageSize > 0 && queryExecutor != null && queryExecutor.hasMore();
+    }
+
+    /**
+     * Applies a single Firestore document change to the MoodList and records it in the delta.
+     * Documents that fail validation are reported to the listener and skipped.
+     *
+     * @param change The document change from a snapshot
+     * @param delta  The delta the resulting change is recorded in
+     */
+    private void applyDocumentChange(DocumentChange change, MoodListDelta delta) {
+        DocumentSnapshot document = change.getDocument();
+        if (change.getType() == DocumentChange.Type.REMOVED) {
+            moodEvents.remove(document.getId(), delta);
+            if (completeQueryTypes.contains(queryType)) {
+                reasonIndex.remove(indexScope(), document.getId());
+            }
+            return;
+        }
+        MoodEvent moodEvent;
+        try {
+            moodEvent = parseMoodEvent(document);
+        } catch (IllegalArgumentException ex) {
+            listener.onError(ex);
+            return;
+        }
+        reasonIndex.put(indexScope(), moodEvent);
+        //filter should cast to String as the constructor ensures instanceOf
+        if (reasonQueryTypes.contains(queryType) && !matchesReasonString(moodEvent, reasonFilterLowercase)) {
+            // A modified event might no longer contain the reasonString
+            moodEvents.remove(moodEvent.getId(), delta);
+            return;
+        }
+        moodEvents.upsert(moodEvent, delta);
+    }
+
+    /**
+     * Creates a MoodEvent from a Firestore document, validating the fields required by this MoodList.
+     *
+     * @param document The document of a mood event
+     * @return The MoodEvent represented by the document
+     * @throws IllegalArgumentException If a required field is missing or has the wrong datatype
+     */
+    private MoodEvent parseMoodEvent(DocumentSnapshot document) {
+        Map<String, Object> documentData = document.getData();
+        if (documentData == null) {
+            throw new IllegalArgumentException("mood event document has no data");
+        }
+        MoodEvent moodEvent = new MoodEvent(document.getId());
+        if (isValidKeyPairDatatype(documentData, "emotional_state", Long.class)) {
+            moodEvent.setEmotionalState(EmotionalState.fromCode((Long) documentData.get("emotional_state")));
+        } else {
+            throw new IllegalArgumentException("emotional state cannot be null");
+        }
+        if (isValidKeyPairDatatype(documentData, "date", Timestamp.class)) {
+            moodEvent.setTimestamp((Timestamp) documentData.get("date"));
+        } else {
+            throw new IllegalArgumentException("date cannot be null");
+        }
+        if (isValidKeyPairDatatype(documentData, "username", String.class)) {
+            moodEvent.setUsername((String) documentData.get("username"));
+        } else if (recentsType) {
+            throw new IllegalArgumentException("username cannot be null for querys of recentMoods or is not a String");
+        }
+        if (isValidKeyPairDatatype(documentData, "trigger", String.class)) {
+            moodEvent.setTrigger((String) documentData.get("trigger"));
+        }
+        if (isValidKeyPairDatatype(documentData, "social_situation", String.class)) {
+            moodEvent.setSocialSituation((String) documentData.get("social_situation"));
+        }
+        if (isValidKeyPairDatatype(documentData, "location", String.class)) {
+            GeoHash geoHash = new GeoHash((String) documentData.get("location"));
+            moodEvent.setLocation(geoHash);
+        } else if (mapType) {
+            throw new IllegalArgumentException("location cannot be null for map query or is not a the correct datatype");
+        }
+        if (isValidKeyPairDatatype(documentData, "picture", String.class)) {
+            moodEvent.setPicture((String) documentData.get("picture"));
+        }
+        if (isValidKeyPairDatatype(documentData, "is_public", Boolean.class)) {
+            moodEvent.setIsPublic((Boolean) documentData.get("is_public"));
+        }
+        return moodEvent;
+    }
+
     /**
      * Checks if a key-value pair in a map is valid for a specific data type.
      *
@@ -783,9 +1534,12 @@ public class MoodList implements Serializable {
      * Constructs a Firestore query based on the current query type and filter.
      * This method configures the query to fetch MoodEvents according to the specified criteria.
      *
+     * @param usernames The followed usernames to query, at most {@link ChunkedQueryExecutor#MAX_CHUNK_SIZE}.
+     *                  Ignored by query types that don't query followed users.
+     * @return The query
      * @throws IllegalArgumentException If the query type is unsupported or the filter is invalid.
      */
-    private void getQuery() {
+    private Query buildQuery(List<String> usernames) {
         Date lastWeekDate = new Date();
         Calendar calendar = Calendar.getInstance();
         calendar.setTime(lastWeekDate);
@@ -800,8 +1554,8 @@ public class MoodList implements Serializable {
             case HISTORY_MODIFIABLE:
                 break;
             case HISTORY_RECENT:
-                query = query.endAt(lastWeek)
-                        .startAt(Timestamp.now());
+                // A range filter instead of startAt/endAt cursors so the query can be paged
+                query = query.whereGreaterThanOrEqualTo("date", lastWeek);
                 // Handle HISTORY_RECENCY query type
                 break;
             case HISTORY_STATE:
@@ -810,30 +1564,34 @@ public class MoodList implements Serializable {
                 // Handle HISTORY_STATE query type
                 break;
             case HISTORY_REASON:
+                // Firestore can't search substrings, so it narrows by a token and matchesReasonString does the rest
+                String token = narrowReasonByToken ? TriggerIndex.searchToken(reasonFilterLowercase) : null;
+                if (token != null) {
+                    query = query.whereArrayContains(TriggerIndex.FIELD, token);
+                }
                 // Handle HISTORY_REASON query type
                 break;
             case FOLLOWING:
-                query = db.collectionGroup("recent_moods").whereIn("username", followings)
-                        .orderBy("username", Query.Direction.DESCENDING);
+                query = db.collectionGroup("recent_moods").whereIn("username", usernames)
+                        .orderBy("date", Query.Direction.DESCENDING);
                 // Handle FOLLOWING query type
                 break;
             case FOLLOWING_RECENT:
-                query = db.collectionGroup("recent_moods").whereIn("username", followings)
-                        .orderBy("date", Query.Direction.DESCENDING)
-                        .endAt(lastWeek)
-                        .startAt(Timestamp.now());
+                query = db.collectionGroup("recent_moods").whereIn("username", usernames)
+                        .whereGreaterThanOrEqualTo("date", lastWeek)
+                        .orderBy("date", Query.Direction.DESCENDING);
 
                 // Handle FOLLOWING_RECENT query type
                 break;
             case FOLLOWING_STATE:
                 filterState = (EmotionalState) filter;
-                query = db.collectionGroup("recent_moods").whereIn("username", followings)
+                query = db.collectionGroup("recent_moods").whereIn("username", usernames)
                         .whereEqualTo("emotional_state", filterState.getCode())
                         .orderBy("date", Query.Direction.DESCENDING);
                 // Handle FOLLOWING_STATE query type
                 break;
             case FOLLOWING_REASON:
-                query = db.collectionGroup("recent_moods").whereIn("username", followings)
+                query = db.collectionGroup("recent_moods").whereIn("username", usernames)
                         .orderBy("date", Query.Direction.DESCENDING);
                 // Handle FOLLOWING_REASON query type
                 break;
@@ -841,7 +1599,7 @@ public class MoodList implements Serializable {
                 query = query.whereNotEqualTo("location", null);
                 break;
             case MAP_FOLLOWING:
-                query = db.collectionGroup("recent_moods").whereIn("username", followings)
+                query = db.collectionGroup("recent_moods").whereIn("username", usernames)
                         .whereNotEqualTo("location", null)
                         .orderBy("date", Query.Direction.DESCENDING);
                 // Handle MAP_FOLLOWED query type
@@ -853,126 +1611,133 @@ public class MoodList implements Serializable {
                 // Handle unexpected query types
                 throw new IllegalArgumentException("unsupported query type: " + queryType);
         }
-        this.query = query;
+        return query;
+    }
+
+    /**
+     * Reads the filter of a MAP_*_CLOSE query. A GeoHash is the circle of the default radius
+     * around it, for the callers that only have a location.
+     *
+     * @param filter The filter of the query, a GeoFilter or GeoHash
+     * @return The filter
+     * @throws IllegalArgumentException If the filter is neither.
+     */
+    private static GeoFilter geoFilterOf(Object filter) {
+        if (filter instanceof GeoFilter) {
+            return (GeoFilter) filter;
+        }
+        if (filter instanceof GeoHash) {
+            return new GeoFilter((GeoHash) filter, GeoFilter.DEFAULT_RADIUS_METERS);
+        }
+        throw new IllegalArgumentException("filter needs to be of type GeoFilter");
     }
 
     //https://firebase.google.com/docs/firestore/solutions/geoqueries#java
     //borrowed from Firebase
     //At 01000 20 02 2025
     /**
-     * Executes a geospatial query to fetch MoodEvents within a specified radius of a location.
-     * This method uses GeoHash to filter events based on their proximity to the given location.
+     * Attaches a live geospatial query for the MoodEvents matching the GeoFilter of this MoodList.
+     * Every GeoHash bound of the circle is listened to, see {@link GeoQueryEngine}, the time window
+     * and emotional state of the filter are checked on the matches.
      *
-     * @throws IllegalArgumentException If the location filter is invalid or the query results are invalid.
-     * @throws RuntimeException If Firestore operations fail or the geospatial query cannot be executed.
-     */
-    private void executeGeoQuery(boolean personal) {
-        Query query;
-        if(personal){
-            query=this.moodEventsRef.whereNotEqualTo("location",null)
-                    .orderBy("location");
-        } else {
-            query = db.collectionGroup("recent_moods")
-                    .whereIn("username", followings)
-                    .whereNotEqualTo("location",null)
-                    .orderBy("location");
-        }
+     * @throws IllegalArgumentException If the query results are invalid.
+     */
+    private void attachGeoQuery() {
+        geoFilter = (GeoFilter) filter;
+        geoEngine = new GeoQueryEngine(new GeoQueryEngine.Listener() {
+            @Override
+            public void onReady() {
+                List<MoodEvent> initialEvents = new ArrayList<>();
+                for (DocumentSnapshot document : geoEngine.getMatches()) {
+                    try {
+                        MoodEvent event = parseMoodEvent(document);
+                        if (geoFilter.matchesDetails(event)) {
+                            initialEvents.add(event);
+                        }
+                    } catch (IllegalArgumentException ex) {
+                        listener.onError(ex);
+                    }
+                }
+                moodEvents.reconcile(initialEvents);
+                deliverSnapshot(new MoodListDelta());
+                reportSyncState();
+            }
 
-        if (filter == null) {
-            return;
-        }
+            @Override
+            public void onMatchesChanged(List<DocumentSnapshot> matched, List<String> unmatched) {
+                MoodListDelta delta = new MoodListDelta();
+                for (String id : unmatched) {
+                    moodEvents.remove(id, delta);
+                }
+                for (DocumentSnapshot document : matched) {
+                    try {
+                        MoodEvent event = parseMoodEvent(document);
+                        if (geoFilter.matchesDetails(event)) {
+                            moodEvents.upsert(event, delta);
+                        } else {
+                            moodEvents.remove(event.getId(), delta);
+                        }
+                    } catch (IllegalArgumentException ex) {
+                        listener.onError(ex);
+                    }
+                }
+                deliverSnapshot(delta);
+                reportSyncState();
+            }
 
-        String currentLocation = null;
+            @Override
+            public void onError(Exception e) {
+                Log.w("Firestore", "Listen failed.", e);
+                listener.onError(new RuntimeException("moodEvents didn't attach"));
+            }
+        });
+        geoEngine.query(geoQueries(), geoFilter);
+    }
 
-        try {
-            // Use reflection to check for a "geoHash" field
-            Field geoHashField = filter.getClass().getDeclaredField("geoHash");
-            // Allow access to private fields
-            geoHashField.setAccessible(true);
-            Object geoHashValue = geoHashField.get(filter);
-            currentLocation = (String) geoHashValue;
-        } catch (NoSuchFieldException e) {
-            // Field "geoHash" does not exist
-            return;
-        } catch (IllegalAccessException e) {
-            // Could not access the field
-            return;
+    /**
+     * @return the queries the geo query of this MoodList runs over, by a key of their followings
+     */
+    private Map<String, Query> geoQueries() {
+        Map<String, Query> queries = new LinkedHashMap<>();
+        if (!recentsType) {
+            queries.put("", this.moodEventsRef.whereNotEqualTo("location",null)
+                    .orderBy("location"));
+            return queries;
+        }
+        // whereIn is capped, so the followings are split into chunks with a query each
+        for (List<String> usernames : ChunkedQueryExecutor.chunk(followings, ChunkedQueryExecutor.MAX_CHUNK_SIZE)) {
+            queries.put(String.join(",", usernames), db.collectionGroup("recent_moods")
+                    .whereIn("username", usernames)
+                    .whereNotEqualTo("location",null)
+                    .orderBy("location"));
         }
+        return queries;
+    }
 
-        if (currentLocation == null) {
+    /**
+     * Moves the circle of a MAP_CLOSE or MAP_PERSONAL_CLOSE MoodList. The listeners of the GeoHash
+     * bounds that still cover the new circle are kept, so only the new bounds are read.
+     * The events that entered or left the circle are delivered to the listener as an update.
+     * The time window and emotional state of the GeoFilter are kept.
+     *
+     * @param center       The new center
+     * @param radiusMeters The new radius in meters
+     * @throws IllegalArgumentException If the MoodList isn't a MAP_CLOSE or MAP_PERSONAL_CLOSE one or the radius isn't positive.
+     */
+    public void moveGeoQuery(GeoHash center, double radiusMeters) {
+        if (queryType != QueryType.MAP_CLOSE && queryType != QueryType.MAP_PERSONAL_CLOSE) {
+            throw new IllegalArgumentException("cannot move the circle of query type: " + queryType);
+        }
+        geoFilter = geoFilterOf(filter).moveTo(center, radiusMeters);
+        filter = geoFilter;
+        if (closed) {
             return;
         }
-
-        GeoLocation location = GeoHash.locationFromHash(currentLocation);
-        List<GeoQueryBounds> bounds = GeoFireUtils.getGeoHashQueryBounds(location, 5000);
-        final List<Task<QuerySnapshot>> tasks = new ArrayList<>();
-        for (GeoQueryBounds b : bounds) {
-            Query q = query.startAt(b.startHash)
-                    .endAt(b.endHash);
-            tasks.add(q.get());
-        }
-        Tasks.whenAllComplete(tasks)
-                .addOnCompleteListener(new OnCompleteListener<List<Task<?>>>() {
-                    @Override
-                    public void onComplete(@NonNull Task<List<Task<?>>> t) {
-                        for (Task<QuerySnapshot> task : tasks) {
-                            QuerySnapshot snap = task.getResult();
-                            for (DocumentSnapshot doc : snap.getDocuments()) {
-                                Map<String, Object> documentData = doc.getData();
-                                String id = doc.getId();
-                                MoodEvent moodEvent = new MoodEvent(id);
-                                if (isValidKeyPairDatatype(documentData, "location", String.class)) {
-                                    GeoHash geoHash = new GeoHash((String) documentData.get("location"));
-                                    moodEvent.setLocation(geoHash);
-                                } else if (mapType) {
-                                    listener.onError(new IllegalArgumentException("location cannot be null for map query or is not a the correct datatype"));
-                                    return;
-                                }
-                                GeoLocation docLocation = GeoHash.locationFromHash(moodEvent.getLocation().getGeoHashString());
-                                // We have to filter out a few false positives due to GeoHash
-                                // accuracy, but most will match
-                                double distanceInM = GeoFireUtils.getDistanceBetween(docLocation, location);
-                                if (distanceInM > 5000) {
-                                    continue;
-                                }
-                                if (isValidKeyPairDatatype(documentData, "emotional_state", Long.class)) {
-                                    moodEvent.setEmotionalState(EmotionalState.fromCode((Long) documentData.get("emotional_state")));
-                                } else {
-                                    listener.onError(new IllegalArgumentException("emotional state cannot be null"));
-                                    return;
-                                }
-                                if (isValidKeyPairDatatype(documentData, "date", Timestamp.class)) {
-                                    moodEvent.setTimestamp((Timestamp) documentData.get("date"));
-                                } else {
-                                    listener.onError(new IllegalArgumentException("date cannot be null"));
-                                    return;
-                                }
-                                if (isValidKeyPairDatatype(documentData, "username", String.class)) {
-                                    moodEvent.setUsername((String) documentData.get("username"));
-                                } else if (recentsType) {
-                                    listener.onError(new IllegalArgumentException("username cannot be null for querys of recentMoods or is not a String"));
-                                    return;
-                                }
-                                if (isValidKeyPairDatatype(documentData, "trigger", String.class)) {
-                                    moodEvent.setTrigger((String) documentData.get("trigger"));
-                                }
-                                if (isValidKeyPairDatatype(documentData, "social_situation", String.class)) {
-                                    moodEvent.setSocialSituation((String) documentData.get("social_situation"));
-                                }
-                                if (isValidKeyPairDatatype(documentData, "picture", String.class)) {
-                                    moodEvent.setPicture((String) documentData.get("picture"));
-                                }
-                                if (isValidKeyPairDatatype(documentData, "is_public", Boolean.class)) {
-                                    moodEvent.setIsPublic((Boolean) documentData.get("is_public"));
-                                }
-                                if(!containsMoodEvent(moodEvent)) {
-                                    moodEvents.add(moodEvent);
-                                }
-                            }
-                        }
-                        listener.returnMoodList(ptrToSelf);
-                    }
-                });
+        if (geoEngine != null) {
+            geoEngine.query(geoQueries(), geoFilter);
+        } else {
+            attachGeoQuery();
+        }
     }
     /**
      * Validates a map of data to ensure it is suitable for storing a personal MoodEvent in Firestore.
@@ -980,7 +1745,7 @@ public class MoodList implements Serializable {
      * @param map The map of data to validate.
      * @return True if the data is valid, false otherwise.
      */
-    private boolean isPersonalEventMapValid(Map<String,Object> map){
+    private static boolean isPersonalEventMapValid(Map<String,Object> map){
         if(!isValidKeyPairDatatype(map,"date", Timestamp.class)){
             return false;
         }
@@ -1002,7 +1767,7 @@ public class MoodList implements Serializable {
      * @param map The map of data to validate.
      * @return True if the data is valid, false otherwise.
      */
-    private boolean isRecentEventMapValid(Map<String,Object> map){
+    private static boolean isRecentEventMapValid(Map<String,Object> map){
         if(!isValidKeyPairDatatype(map,"date", Timestamp.class)){
             return false;
         }
@@ -1095,34 +1860,136 @@ public class MoodList implements Serializable {
     //firestore doesn't have a feature to do this using queries.
     //The only options are to do it serverside which we cant, use a third party software which can cost $$, or do filtering clientside
     /**
-     * removes all moodEvents that do not contain the reasonString.
-     * Case insensitive.
+     * Checks if a moodEvent's trigger contains the reasonString.
+     * Case insensitive, the lowercase trigger is cached by the event.
      *
-     * @param reasonString The substring to search
-     */
-    private void reasonStringSearch(String reasonString){
-        Iterator<MoodEvent> iter = moodEvents.iterator();
-        while(iter.hasNext()) {
-            MoodEvent event = iter.next();
-            if(event.getTrigger() == null){
-                iter.remove();
-                continue;
+     * @param event The event to check
+     * @param reasonStringLowercase The lowercase substring to search
+     * @return True if the trigger contains the reasonString, false if not or if there is no trigger
+     */
+    private static boolean matchesReasonString(MoodEvent event, String reasonStringLowercase){
+        if(event.getTrigger() == null){
+            return false;
+        }
+        return event.getTriggerLowercase().contains(reasonStringLowercase);
+    }
+
+    /**
+     * Adds trigger_tokens to the events of a user that were written before the field existed, once
+     * per user. A flag on the user document records that it was done, so later runs only read it.
+     * A failed backfill is tried again next time.
+     *
+     * @param userDocRef The user document
+     * @return A future completed once every event of the user has trigger tokens
+     */
+    private static CompletableFuture<Void> backfillTriggerTokens(DocumentReference userDocRef) {
+        CompletableFuture<Void> backfill = triggerBackfills.computeIfAbsent(userDocRef.getId(),
+                username -> AppExecutors.getInstance().io().submit(() -> {
+                    DocumentSnapshot userDoc = Tasks.await(userDocRef.get());
+                    if (Boolean.TRUE.equals(userDoc.get(TRIGGER_TOKENS_FLAG))) {
+                        return null;
+                    }
+                    QuerySnapshot events = Tasks.await(userDocRef.collection("mood_events").get());
+                    WriteBatch batch = userDocRef.getFirestore().batch();
+                    int writes = 0;
+                    for (DocumentSnapshot event : events.getDocuments()) {
+                        Object trigger = event.get("trigger");
+                        if (trigger instanceof String && !(event.get(TriggerIndex.FIELD) instanceof List)) {
+                            batch.update(event.getReference(), TriggerIndex.FIELD, TriggerIndex.tokens((String) trigger));
+                            writes++;
+                            if (writes == MAX_BATCH_SIZE) {
+                                Tasks.await(batch.commit());
+                                batch = userDocRef.getFirestore().batch();
+                                writes = 0;
+                            }
+                        }
+                    }
+                    if (writes > 0) {
+                        Tasks.await(batch.commit());
+                    }
+                    Tasks.await(userDocRef.update(TRIGGER_TOKENS_FLAG, true));
+                    return null;
+                }));
+        backfill.whenComplete((ignored, e) -> {
+            if (e != null) {
+                triggerBackfills.remove(userDocRef.getId(), backfill);
             }
-            if(!event.getTrigger().toLowerCase().contains(reasonString.toLowerCase())) {
-                iter.remove(); // Removes the 'current' item
+        });
+        return backfill;
+    }
+
+    /**
+     * Removes every firestore listener of the MoodList, no more updates reach the listener after this.
+     * A shared query keeps its listeners until every MoodList subscribed to it is closed.
+     * Writes that were already started still complete and report their errors. Calling it again does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (shared != null) {
+            shared.unsubscribe(this);
+        }
+        if (followingRegistration != null) {
+            followingRegistration.remove();
+            followingRegistration = null;
+        }
+        if (queryExecutor != null) {
+            queryExecutor.close();
+        }
+        if (geoEngine != null) {
+            geoEngine.close();
+        }
+        if (subscribers == null) {
+            int open = openMoodLists.decrementAndGet();
+            Log.d("MoodList", "Closed " + queryType + " MoodList, " + open + " open with "
+                    + LiveListeners.count() + " live listeners");
+        }
+    }
+
+    /**
+     * Removes a closed MoodList from the subscribers of this shared query, the query is closed
+     * with its last subscriber.
+     */
+    private void unsubscribe(MoodList moodList) {
+        synchronized (sharedQueries) {
+            subscribers.moodLists.remove(moodList);
+            if (!subscribers.moodLists.isEmpty()) {
+                return;
             }
+            sharedQueries.remove(sharedKey);
         }
+        close();
     }
 
-    public void clearMoodEvents() {
-        Log.d("MoodList", "clearMoodEvents() called, but delaying actual clearing until new data is fetched.");
+    /**
+     * @return True if {@link #close()} was called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
 
-        if (query != null) {
-            attachMoodEventsListener(query);
-        } else {
-            Log.d("MoodList", "Query is null, cannot re-fetch.");
-        }
+    /**
+     * Counts the MoodLists that were created and not closed, a count that keeps growing while
+     * navigating means MoodLists are leaked.
+     *
+     * @return the number of open MoodLists
+     */
+    public static int getOpenMoodListCount() {
+        return openMoodLists.get();
     }
+
+    /**
+     * Counts the firestore snapshot listeners attached by all MoodLists that are open.
+     *
+     * @return the number of live listeners
+     */
+    public static int getLiveListenerCount() {
+        return LiveListeners.count();
+    }
+
     /**
      * See if a moodEvent with the same ID as the mood event is passed in.
      * Note that MoodEvents from different users can share the same ID.
@@ -1133,12 +2000,7 @@ public class MoodList implements Serializable {
      *
      */
     public boolean containsMoodEvent(MoodEvent event){
-        for(MoodEvent containedEvent: this.moodEvents){
-            if(event.getId().equals(containedEvent.getId())){
-                return true;
-            }
-        }
-        return false;
+        return this.moodEvents.contains(event.getId());
     }
 
     /**
@@ -1148,12 +2010,7 @@ public class MoodList implements Serializable {
      * @return          The event from within the DataList, returns null if no MoodEvent of same ID exists
      */
     public MoodEvent getMoodEventOfSameID(MoodEvent event){
-        for(MoodEvent containedEvent: this.moodEvents){
-            if(event.getId().equals(containedEvent.getId())){
-                return containedEvent;
-            }
-        }
-        return null;
+        return this.moodEvents.get(event.getId());
     }
 
 
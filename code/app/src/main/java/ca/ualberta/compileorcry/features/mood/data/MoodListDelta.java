@@ -0,0 +1,86 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how the contents of a {@link MoodList} changed after a snapshot was applied.
+ *
+ * The changes are recorded in the order they were made, each position is relative to the list
+ * as it was right after the previous change. Replaying them in order (for example as
+ * RecyclerView notifyItem* calls) transforms the old list into the new one.
+ *
+ * @see MoodList.MoodListListener#updatedMoodList(MoodListDelta)
+ */
+public class MoodListDelta {
+    /**
+     * The kind of change made to a single position
+     */
+    public enum Type {
+        INSERTED,
+        CHANGED,
+        REMOVED,
+        MOVED
+    }
+
+    /**
+     * A single change in the list. For MOVED changes the event moved from position to toPosition,
+     * for every other type toPosition is the same as position.
+     */
+    public static class Change {
+        private final Type type;
+        private final int position;
+        private final int toPosition;
+
+        Change(Type type, int position, int toPosition) {
+            this.type = type;
+            this.position = position;
+            this.toPosition = toPosition;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public int getToPosition() {
+            return toPosition;
+        }
+    }
+
+    private final ArrayList<Change> changes = new ArrayList<>();
+
+    void inserted(int position) {
+        changes.add(new Change(Type.INSERTED, position, position));
+    }
+
+    void changed(int position) {
+        changes.add(new Change(Type.CHANGED, position, position));
+    }
+
+    void removed(int position) {
+        changes.add(new Change(Type.REMOVED, position, position));
+    }
+
+    void moved(int from, int to) {
+        changes.add(new Change(Type.MOVED, from, to));
+    }
+
+    /**
+     * @return the changes in the order they were applied
+     */
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+}
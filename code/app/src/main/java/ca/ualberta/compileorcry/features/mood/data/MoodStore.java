@@ -0,0 +1,262 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import com.google.firebase.Timestamp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+
+/**
+ * Indexed in-memory store for the MoodEvents held by a {@link MoodList}.
+ *
+ * The store keeps two indexes over the same events:
+ * - a hash index from mood id to event, so lookups by id are O(1)
+ * - a date-ordered index (newest first) so the list can be displayed without re-sorting and
+ *   the position of an event can be found with a binary search
+ *
+ * The date-ordered index is exposed through {@link #view()} as a read-only live list.
+ * Callers should never need to sort it themselves.
+ *
+ * Note: the store is not thread safe, all mutations are expected to happen on the thread that
+ * delivers Firestore snapshots (the main thread).
+ *
+ * @see MoodList
+ */
+public class MoodStore implements Serializable {
+    /**
+     * Orders events newest first, ties are broken by id so the order is total and stable.
+     * Events without a timestamp are treated as the oldest.
+     */
+    public static final Comparator<MoodEvent> NEWEST_FIRST = (o1, o2) -> {
+        Timestamp t1 = o1.getTimestamp();
+        Timestamp t2 = o2.getTimestamp();
+        if (t1 != t2) {
+            if (t1 == null) {
+                return 1;
+            }
+            if (t2 == null) {
+                return -1;
+            }
+            int cmp = t2.compareTo(t1);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return o1.getId().compareTo(o2.getId());
+    };
+
+    private final HashMap<String, MoodEvent> byId = new HashMap<>();     //hash index of id to event
+    private final ArrayList<MoodEvent> byDate = new ArrayList<>();       //date ordered index, newest first
+    private final List<MoodEvent> view = Collections.unmodifiableList(byDate);  //read only view of byDate
+
+    /**
+     * Returns a read-only live view of the events in reverse chronological order.
+     * The view reflects every later change to the store.
+     *
+     * @return the events ordered newest first
+     */
+    public List<MoodEvent> view() {
+        return view;
+    }
+
+    /**
+     * @return the number of events in the store
+     */
+    public int size() {
+        return byDate.size();
+    }
+
+    /**
+     * @return true if the store holds no events
+     */
+    public boolean isEmpty() {
+        return byDate.isEmpty();
+    }
+
+    /**
+     * @param id the id of a MoodEvent
+     * @return true if an event with the id is stored
+     */
+    public boolean contains(String id) {
+        return id != null && byId.containsKey(id);
+    }
+
+    /**
+     * @param id the id of a MoodEvent
+     * @return the stored event with the id or null if there isn't one
+     */
+    public MoodEvent get(String id) {
+        if (id == null) {
+            return null;
+        }
+        return byId.get(id);
+    }
+
+    /**
+     * @param position a position in the date ordered index
+     * @return the event at that position
+     */
+    public MoodEvent getAt(int position) {
+        return byDate.get(position);
+    }
+
+    /**
+     * Finds the position of the stored event with the given id.
+     *
+     * @param id the id of a MoodEvent
+     * @return the position of the event in {@link #view()}, or -1 if it isn't stored
+     */
+    public int indexOf(String id) {
+        MoodEvent stored = get(id);
+        if (stored == null) {
+            return -1;
+        }
+        int pos = Collections.binarySearch(byDate, stored, NEWEST_FIRST);
+        if (pos >= 0 && byDate.get(pos) == stored) {
+            return pos;
+        }
+        //the stored object was mutated in place (e.g. its date was edited), fall back to a scan
+        for (int i = 0; i < byDate.size(); i++) {
+            if (byDate.get(i) == stored) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts an event, replacing any stored event with the same id.
+     *
+     * @param event the event to store
+     * @return the position of the event in {@link #view()} after the insert
+     */
+    public int upsert(MoodEvent event) {
+        if (byId.containsKey(event.getId())) {
+            removeFromOrder(event.getId());
+        }
+        byId.put(event.getId(), event);
+        return insertIntoOrder(event);
+    }
+
+    /**
+     * Inserts an event, replacing any stored event with the same id, and records the resulting
+     * change in the delta.
+     *
+     * @param event the event to store
+     * @param delta the delta to record the change in
+     * @return the position of the event in {@link #view()} after the insert
+     */
+    public int upsert(MoodEvent event, MoodListDelta delta) {
+        int oldPos = indexOf(event.getId());
+        int newPos = upsert(event);
+        if (oldPos < 0) {
+            delta.inserted(newPos);
+        } else if (oldPos == newPos) {
+            delta.changed(newPos);
+        } else {
+            delta.moved(oldPos, newPos);
+            delta.changed(newPos);
+        }
+        return newPos;
+    }
+
+    /**
+     * Removes the event with the given id and records the removal in the delta.
+     *
+     * @param id the id of the event to remove
+     * @param delta the delta to record the change in
+     * @return the position the event had in {@link #view()}, or -1 if it wasn't stored
+     */
+    public int remove(String id, MoodListDelta delta) {
+        int pos = remove(id);
+        if (pos >= 0) {
+            delta.removed(pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Removes the event with the given id.
+     *
+     * @param id the id of the event to remove
+     * @return the position the event had in {@link #view()}, or -1 if it wasn't stored
+     */
+    public int remove(String id) {
+        if (!contains(id)) {
+            return -1;
+        }
+        int pos = removeFromOrder(id);
+        byId.remove(id);
+        return pos;
+    }
+
+    /**
+     * Re-sorts a single stored event after it was mutated in place, for example when its
+     * date was edited.
+     *
+     * @param id the id of the mutated event
+     * @return the new position of the event, or -1 if it isn't stored
+     */
+    public int reposition(String id) {
+        MoodEvent stored = get(id);
+        if (stored == null) {
+            return -1;
+        }
+        removeFromOrder(id);
+        return insertIntoOrder(stored);
+    }
+
+    /**
+     * Replaces the whole content of the store with the given events.
+     * Runs in linear time when the events are already close to date order, which is the case for
+     * every query made by MoodList as they are all ordered by date.
+     *
+     * @param events the events that should be stored, later duplicates of an id win
+     */
+    public void reconcile(Collection<MoodEvent> events) {
+        byId.clear();
+        for (MoodEvent event : events) {
+            byId.put(event.getId(), event);
+        }
+        byDate.clear();
+        for (MoodEvent event : events) {
+            //keeps the incoming order and skips duplicates that were replaced by a later event
+            if (byId.get(event.getId()) == event) {
+                byDate.add(event);
+            }
+        }
+        //TimSort is linear on presorted input
+        Collections.sort(byDate, NEWEST_FIRST);
+    }
+
+    /**
+     * Removes every event from the store.
+     */
+    public void clear() {
+        byId.clear();
+        byDate.clear();
+    }
+
+    private int insertIntoOrder(MoodEvent event) {
+        int pos = Collections.binarySearch(byDate, event, NEWEST_FIRST);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        byDate.add(pos, event);
+        return pos;
+    }
+
+    private int removeFromOrder(String id) {
+        int pos = indexOf(id);
+        if (pos >= 0) {
+            byDate.remove(pos);
+        }
+        return pos;
+    }
+}
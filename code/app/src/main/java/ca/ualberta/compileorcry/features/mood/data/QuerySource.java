@@ -0,0 +1,242 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SnapshotMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single Firestore query that is listened to one page at a time.
+ *
+ * Every page has its own snapshot listener. Every page except the last one covers a fixed window
+ * of the query, from the end of the previous page to its own end. The last page is limited to
+ * pageSize documents so only that many are read until {@link #loadMore()} is called.
+ * The first page has no start so newly added documents always land in it.
+ * A source with a page size of 0 isn't paged and listens to the whole query with a single page.
+ *
+ * The snapshots are handed to a {@link Listener}, the source itself doesn't parse documents.
+ * With the persistent cache every page first gets a snapshot from the cache, then the snapshots of
+ * the server. Snapshots that only change the metadata are delivered as well, without document
+ * changes, so the source knows when its documents are synced with the server.
+ *
+ * @see ChunkedQueryExecutor
+ * @see MoodList
+ */
+class QuerySource {
+    /**
+     * Callback listener for the snapshots of the pages of a source
+     */
+    interface Listener {
+        /**
+         * Called for every snapshot of a page.
+         *
+         * @param page          The page the snapshot is for
+         * @param snapshot      The snapshot
+         * @param firstSnapshot True if this is the first snapshot since the page was (re-)attached
+         */
+        void onPageSnapshot(Page page, QuerySnapshot snapshot, boolean firstSnapshot);
+
+        void onError(Exception e);
+    }
+
+    /**
+     * A page of the source. A page keeps its identity when it is re-attached as a fixed window,
+     * so it can be used to track which page last saw a document.
+     */
+    static class Page {
+        private final QuerySource source;
+        private DocumentSnapshot end;   //the last document of the page
+        private ListenerRegistration registration;
+        private List<DocumentSnapshot> documents = Collections.emptyList();    //the documents of the latest snapshot
+        private boolean delivered = false;      //true once the page received a snapshot
+        private SnapshotMetadata metadata;      //the metadata of the latest snapshot
+
+        private Page(QuerySource source) {
+            this.source = source;
+        }
+
+        QuerySource getSource() {
+            return source;
+        }
+
+        /**
+         * @return the documents of the latest snapshot of the page, in query order
+         */
+        List<DocumentSnapshot> getDocuments() {
+            return documents;
+        }
+    }
+
+    private final Query query;      //the query without any cursors or limit
+    private final int pageSize;     //number of documents per page, 0 if the source isn't paged
+    private final Listener listener;
+    private final ArrayList<Page> pages = new ArrayList<>();
+    private boolean hasMore = false;    //true if the last page was full so more documents may exist
+    private boolean loading = false;    //true while the last page hasn't received its first snapshot
+    private boolean detached = false;
+
+    QuerySource(Query query, int pageSize, Listener listener) {
+        this.query = query;
+        this.pageSize = pageSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Attaches the listener of the first page.
+     */
+    void attach() {
+        pages.add(new Page(this));
+        listen(0);
+    }
+
+    /**
+     * Loads the next page. The current last page is re-attached as a fixed window so it no longer
+     * shifts when documents are added above it, and a listener limited to pageSize documents is
+     * attached after it.
+     *
+     * @return True if a page is being loaded, false if the source isn't paged, a page is already
+     *         loading or there are no more documents.
+     */
+    boolean loadMore() {
+        if (detached || pageSize <= 0 || loading || !hasMore) {
+            return false;
+        }
+        int lastPage = pages.size() - 1;
+        if (pages.get(lastPage).end == null) {
+            return false;
+        }
+        pages.add(new Page(this));
+        pages.get(lastPage).registration.remove();
+        listen(lastPage);
+        listen(lastPage + 1);
+        return true;
+    }
+
+    /**
+     * @return True if the source is paged and more documents may exist that aren't loaded yet
+     */
+    boolean hasMore() {
+        return pageSize > 0 && hasMore;
+    }
+
+    /**
+     * @return True while a page is waiting for its first snapshot
+     */
+    boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return True once every page of the source received a snapshot
+     */
+    boolean hasDelivered() {
+        if (pages.isEmpty()) {
+            return false;
+        }
+        for (Page page : pages) {
+            if (!page.delivered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if a page that received a snapshot got it from the cache, not the server
+     */
+    boolean isFromCache() {
+        for (Page page : pages) {
+            if (page.metadata != null && page.metadata.isFromCache()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a page holds local writes that the server didn't confirm yet
+     */
+    boolean hasPendingWrites() {
+        for (Page page : pages) {
+            if (page.metadata != null && page.metadata.hasPendingWrites()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the pages of the source, first page first
+     */
+    List<Page> getPages() {
+        return Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * Removes the listeners of every page. The source doesn't deliver anything after this.
+     */
+    void detach() {
+        detached = true;
+        for (Page page : pages) {
+            if (page.registration != null) {
+                page.registration.remove();
+                page.registration = null;
+            }
+        }
+    }
+
+    private void listen(int index) {
+        Page page = pages.get(index);
+        Query pageQuery = query;
+        if (index > 0) {
+            pageQuery = pageQuery.startAfter(pages.get(index - 1).end);
+        }
+        boolean isLastPage = index == pages.size() - 1;
+        if (isLastPage) {
+            if (pageSize > 0) {
+                pageQuery = pageQuery.limit(pageSize);
+            }
+            loading = true;
+        } else {
+            pageQuery = pageQuery.endAt(page.end);
+        }
+        Log.d("Firestore", "QuerySource listening to page " + index);
+        page.registration = LiveListeners.track(pageQuery.addSnapshotListener(MetadataChanges.INCLUDE, new EventListener<QuerySnapshot>() {
+            private boolean firstSnapshot = true;
+
+            @Override
+            public void onEvent(QuerySnapshot snapshot, FirebaseFirestoreException e) {
+                if (detached) {
+                    return;
+                }
+                if (e != null) {
+                    Log.w("Firestore", "Listen failed.", e);
+                    listener.onError(e);
+                    return;
+                }
+                page.documents = snapshot.getDocuments();
+                page.delivered = true;
+                page.metadata = snapshot.getMetadata();
+                if (isLastPage) {
+                    List<DocumentSnapshot> documents = snapshot.getDocuments();
+                    page.end = documents.isEmpty() ? null : documents.get(documents.size() - 1);
+                    hasMore = pageSize > 0 && documents.size() >= pageSize;
+                    loading = false;
+                }
+                boolean first = firstSnapshot;
+                firstSnapshot = false;
+                listener.onPageSnapshot(page, snapshot, first);
+            }
+        }));
+    }
+}
@@ -0,0 +1,249 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+import ca.ualberta.compileorcry.features.mood.model.TriggerIndex;
+
+/**
+ * On-device inverted index over the triggers of every mood event the MoodLists have seen, so a
+ * reason search can be answered before its query returns.
+ *
+ * Events are kept in scopes, the own history of a user and the recent moods of the users they
+ * follow, each capped at {@link #MAX_EVENTS_PER_SCOPE} events with the least recently seen
+ * dropped first. Every scope maps the trigger tokens of {@link TriggerIndex} to the events that
+ * have them. A search intersects the events of the full length tokens of the search, checks the
+ * substring on the cached lowercase trigger and ranks the matches.
+ *
+ * The index keeps its own copies of the events, so a MoodList editing its events in place
+ * doesn't change the answers of other MoodLists.
+ *
+ * @see MoodList
+ */
+public class ReasonIndex {
+    static final int MAX_EVENTS_PER_SCOPE = 5000;     //events kept per scope before the least recently seen are dropped
+    private static final ReasonIndex instance = new ReasonIndex();
+
+    /**
+     * An indexed event
+     */
+    private static class Entry {
+        final MoodEvent event;
+        final String lowercase;     //lowercase trigger, empty if the event has none
+        final List<String> tokens;
+
+        Entry(MoodEvent event) {
+            this.event = event;
+            this.lowercase = event.getTrigger() == null ? "" : event.getTriggerLowercase();
+            this.tokens = event.getTrigger() == null ? new ArrayList<>() : TriggerIndex.tokens(event.getTrigger());
+        }
+    }
+
+    /**
+     * The events of a scope and their postings
+     */
+    private static class Scope {
+        private final LinkedHashMap<String, Entry> events = new LinkedHashMap<>();     //by id, least recently seen first
+        private final HashMap<String, Set<String>> postings = new HashMap<>();      //token -> ids of the events with it
+
+        private void put(Entry entry) {
+            remove(entry.event.getId());
+            events.put(entry.event.getId(), entry);
+            for (String token : entry.tokens) {
+                Set<String> ids = postings.get(token);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    postings.put(token, ids);
+                }
+                ids.add(entry.event.getId());
+            }
+            Iterator<Entry> oldest = events.values().iterator();
+            while (events.size() > MAX_EVENTS_PER_SCOPE) {
+                Entry dropped = oldest.next();
+                oldest.remove();
+                unpost(dropped);
+            }
+        }
+
+        private void remove(String id) {
+            Entry removed = events.remove(id);
+            if (removed != null) {
+                unpost(removed);
+            }
+        }
+
+        private void unpost(Entry entry) {
+            for (String token : entry.tokens) {
+                Set<String> ids = postings.get(token);
+                if (ids != null) {
+                    ids.remove(entry.event.getId());
+                    if (ids.isEmpty()) {
+                        postings.remove(token);
+                    }
+                }
+            }
+        }
+    }
+
+    private final HashMap<String, Scope> scopes = new HashMap<>();
+
+    private ReasonIndex() {}
+
+    /**
+     * @return the index of the app
+     */
+    public static ReasonIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param username The user
+     * @return the scope of the mood_events of the user
+     */
+    static String historyScope(String username) {
+        return "history/" + username;
+    }
+
+    /**
+     * @param username The user
+     * @return the scope of the recent_moods seen by the user
+     */
+    static String followingScope(String username) {
+        return "following/" + username;
+    }
+
+    /**
+     * Indexes a seen event, replacing what was indexed for its id.
+     *
+     * @param scope The scope of the event
+     * @param event The event
+     */
+    synchronized void put(String scope, MoodEvent event) {
+        Scope events = scopes.get(scope);
+        if (events == null) {
+            events = new Scope();
+            scopes.put(scope, events);
+        }
+        events.put(new Entry(copyOf(event)));
+    }
+
+    /**
+     * Forgets a deleted event.
+     *
+     * @param scope The scope of the event
+     * @param id    The id of the event
+     */
+    synchronized void remove(String scope, String id) {
+        Scope events = scopes.get(scope);
+        if (events != null) {
+            events.remove(id);
+        }
+    }
+
+    /**
+     * Finds the indexed events whose trigger contains the search, case insensitive.
+     * Events whose trigger starts with the search come first, then the ones with a word starting
+     * with it, then the other matches, newest first within each group.
+     *
+     * @param scope  The scope to search
+     * @param search The search
+     * @return The matching events, which must not be modified
+     */
+    synchronized List<MoodEvent> search(String scope, String search) {
+        Scope events = scopes.get(scope);
+        if (events == null) {
+            return new ArrayList<>();
+        }
+        String lowercase = TriggerIndex.lowercase(search);
+        Collection<String> candidates = candidates(events, lowercase);
+        List<Entry> matches = new ArrayList<>();
+        for (String id : candidates) {
+            Entry entry = events.events.get(id);
+            if (entry != null && entry.event.getTrigger() != null && entry.lowercase.contains(lowercase)) {
+                matches.add(entry);
+            }
+        }
+        matches.sort(Comparator.comparingInt((Entry entry) -> rank(entry.lowercase, lowercase))
+                .thenComparing((a, b) -> MoodStore.NEWEST_FIRST.compare(a.event, b.event)));
+        List<MoodEvent> ranked = new ArrayList<>();
+        for (Entry entry : matches) {
+            ranked.add(entry.event);
+        }
+        return ranked;
+    }
+
+    /**
+     * @return the number of events indexed in the scope
+     */
+    synchronized int size(String scope) {
+        Scope events = scopes.get(scope);
+        return events == null ? 0 : events.events.size();
+    }
+
+    /**
+     * Forgets every event, for example when the user logs out.
+     */
+    public synchronized void clear() {
+        scopes.clear();
+    }
+
+    /**
+     * Every event containing the search has all the full length tokens of the search, so only
+     * the events in all their postings need to be checked.
+     */
+    private static Collection<String> candidates(Scope events, String lowercase) {
+        Set<String> candidates = null;
+        for (String token : TriggerIndex.tokens(lowercase)) {
+            if (token.length() < TriggerIndex.TOKEN_LENGTH) {
+                // A short word of the search can be the inside of a longer word, it doesn't narrow
+                continue;
+            }
+            Set<String> ids = events.postings.get(token);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            if (candidates == null) {
+                candidates = new HashSet<>(ids);
+            } else {
+                candidates.retainAll(ids);
+            }
+        }
+        return candidates != null ? candidates : new ArrayList<>(events.events.keySet());
+    }
+
+    /**
+     * @return 0 if the trigger starts with the search, 1 if a word of it does, otherwise 2
+     */
+    private static int rank(String trigger, String search) {
+        if (trigger.startsWith(search)) {
+            return 0;
+        }
+        for (int at = trigger.indexOf(search); at >= 0; at = trigger.indexOf(search, at + 1)) {
+            if (!Character.isLetterOrDigit(trigger.charAt(at - 1))) {
+                return 1;
+            }
+        }
+        return 2;
+    }
+
+    private static MoodEvent copyOf(MoodEvent event) {
+        MoodEvent copy = new MoodEvent(event.getId());
+        copy.setUsername(event.getUsername());
+        copy.setTimestamp(event.getTimestamp());
+        copy.setEmotionalState(event.getEmotionalState());
+        copy.setTrigger(event.getTrigger());
+        copy.setSocialSituation(event.getSocialSituation());
+        copy.setLocation(event.getLocation());
+        copy.setPicture(event.getPicture());
+        copy.setIsPublic(event.getIsPublic());
+        return copy;
+    }
+}
@@ -0,0 +1,325 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
+
+/**
+ * Maintains the recent_moods projection of a user, the {@link #MAX_RECENT} newest public mood events
+ * that followers see in their FOLLOWING feeds.
+ *
+ * The ids and dates of the projected events are kept newest first in the summary document
+ * most_recent_moods/{username}, the parent of the recent_moods collection. Every change runs in a
+ * single transaction that reads only the summary document and then writes the summary, the
+ * recent_moods documents that enter the projection and the deletes of the ones that leave it.
+ * Firestore retries the transaction when another client changed the summary in between, so changes
+ * from several MoodLists or devices can't overwrite each other.
+ *
+ * Users whose projection was written before the summary existed have it built once from the
+ * recent_moods collection.
+ *
+ * The ids written by the last transaction are remembered, so an edit that doesn't change which
+ * events are projected can be mirrored to recent_moods without reading the summary.
+ *
+ * @see MoodList
+ */
+class RecentMoods {
+    static final int MAX_RECENT = 3;    //number of public events in the projection
+
+    /**
+     * A projected event, newest first order is by date then id
+     */
+    static class Entry {
+        final String id;
+        final Timestamp date;
+
+        Entry(String id, Timestamp date) {
+            this.id = id;
+            this.date = date;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("mood_id", id);
+            map.put("date", date);
+            return map;
+        }
+    }
+
+    static final Comparator<Entry> NEWEST_FIRST = (a, b) -> {
+        int byDate = b.date.compareTo(a.date);
+        return byDate != 0 ? byDate : a.id.compareTo(b.id);
+    };
+
+    /**
+     * A change to the projection
+     */
+    interface Change {
+        /**
+         * @param current The projected events, newest first
+         * @return The events that should be projected, any order and size, the newest are kept
+         */
+        List<Entry> apply(List<Entry> current);
+    }
+
+    private final FirebaseFirestore db;
+    private final DocumentReference summaryRef;
+    private final CollectionReference recentRef;
+    private volatile Set<String> knownIds;     //ids in the projection as of the last transaction, null before one ran
+
+    RecentMoods(FirebaseFirestore db, String username) {
+        this.db = db;
+        this.summaryRef = db.collection("most_recent_moods").document(username);
+        this.recentRef = summaryRef.collection("recent_moods");
+    }
+
+    /**
+     * Adds a public event to the projection, it is only kept if it is among the newest.
+     *
+     * @param id        The id of the event
+     * @param recentMap The recent_moods document of the event
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> add(String id, Map<String, Object> recentMap) {
+        return add(Collections.singletonMap(id, recentMap));
+    }
+
+    /**
+     * Adds public events to the projection in one transaction, only the newest are kept.
+     *
+     * @param recentMaps The recent_moods documents of the events, by id
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> add(Map<String, Map<String, Object>> recentMaps) {
+        List<Entry> added = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> recentMap : recentMaps.entrySet()) {
+            added.add(new Entry(recentMap.getKey(), (Timestamp) recentMap.getValue().get("date")));
+        }
+        return update(current -> {
+            List<Entry> next = new ArrayList<>(current);
+            next.removeIf(entry -> recentMaps.containsKey(entry.id));
+            next.addAll(added);
+            return next;
+        }, recentMaps);
+    }
+
+    /**
+     * Removes events from the projection. The freed spots are refilled from the candidates, which
+     * should be the newest public events the caller knows of.
+     *
+     * @param ids        The ids of the removed events
+     * @param candidates The recent_moods documents of events that may take the freed spots, by id
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> remove(Collection<String> ids, Map<String, Map<String, Object>> candidates) {
+        Set<String> removed = new HashSet<>(ids);
+        return update(current -> {
+            List<Entry> next = new ArrayList<>(current);
+            next.removeIf(entry -> removed.contains(entry.id));
+            for (Map.Entry<String, Map<String, Object>> candidate : candidates.entrySet()) {
+                if (!removed.contains(candidate.getKey())) {
+                    next.add(new Entry(candidate.getKey(), (Timestamp) candidate.getValue().get("date")));
+                }
+            }
+            return next;
+        }, candidates);
+    }
+
+    /**
+     * Replaces an edited public event whose date changed, it may leave the projection or move
+     * within it. The freed spot is refilled from the candidates.
+     *
+     * @param id         The id of the event
+     * @param recentMap  The new recent_moods document of the event
+     * @param candidates The recent_moods documents of events that may take a freed spot, by id
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> replace(String id, Map<String, Object> recentMap, Map<String, Map<String, Object>> candidates) {
+        Map<String, Map<String, Object>> maps = new HashMap<>(candidates);
+        maps.put(id, recentMap);
+        Entry replaced = new Entry(id, (Timestamp) recentMap.get("date"));
+        return update(current -> {
+            List<Entry> next = new ArrayList<>(current);
+            next.removeIf(entry -> entry.id.equals(id));
+            next.add(replaced);
+            for (Map.Entry<String, Map<String, Object>> candidate : candidates.entrySet()) {
+                if (!candidate.getKey().equals(id)) {
+                    next.add(new Entry(candidate.getKey(), (Timestamp) candidate.getValue().get("date")));
+                }
+            }
+            return next;
+        }, maps, Collections.singleton(id));
+    }
+
+    /**
+     * Mirrors changed fields of an event to its recent_moods document, the projection itself is
+     * unchanged.
+     *
+     * @param id      The id of the event, which has to be projected
+     * @param changes The changed fields
+     * @return A future completed once the document is updated
+     */
+    CompletableFuture<Void> mirror(String id, Map<String, Object> changes) {
+        return AppExecutors.toFuture(recentRef.document(id).update(changes));
+    }
+
+    /**
+     * Checks if an event is projected without a read.
+     *
+     * @param id The id of the event
+     * @return true or false as of the last transaction of this instance, null if none ran yet
+     */
+    Boolean isProjected(String id) {
+        Set<String> ids = knownIds;
+        return ids == null ? null : ids.contains(id);
+    }
+
+    /**
+     * Applies a change to the projection in a transaction.
+     *
+     * @param change The change
+     * @param maps   The recent_moods documents of events the change may add, by id
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> update(Change change, Map<String, Map<String, Object>> maps) {
+        return update(change, maps, Collections.emptySet());
+    }
+
+    /**
+     * Applies a change to the projection in a transaction.
+     *
+     * @param change    The change
+     * @param maps      The recent_moods documents of events the change may add, by id
+     * @param rewritten Ids whose documents are written from maps even if they stay projected
+     * @return A future completed once the projection is stored
+     */
+    CompletableFuture<Void> update(Change change, Map<String, Map<String, Object>> maps, Set<String> rewritten) {
+        return AppExecutors.getInstance().io().submit(() -> {
+            AtomicReference<Set<String>> written = new AtomicReference<>();
+            List<Entry> seed = null;
+            while (true) {
+                List<Entry> finalSeed = seed;
+                Boolean applied = Tasks.await(db.runTransaction(transaction -> {
+                    DocumentSnapshot summary = transaction.get(summaryRef);
+                    List<Entry> current;
+                    if (summary.exists() && summary.get("recent") instanceof List) {
+                        current = parse((List<?>) summary.get("recent"));
+                    } else if (finalSeed != null) {
+                        current = finalSeed;
+                    } else {
+                        return false;   //the summary has to be built from the collection first
+                    }
+                    List<Entry> next = project(change.apply(current));
+                    Set<String> currentIds = ids(current);
+                    Set<String> nextIds = ids(next);
+                    for (Entry entry : next) {
+                        if (!currentIds.contains(entry.id) || rewritten.contains(entry.id)) {
+                            Map<String, Object> recentMap = maps.get(entry.id);
+                            if (recentMap == null) {
+                                throw new IllegalArgumentException("no recent document for " + entry.id);
+                            }
+                            transaction.set(recentRef.document(entry.id), recentMap);
+                        }
+                    }
+                    for (Entry entry : current) {
+                        if (!nextIds.contains(entry.id)) {
+                            transaction.delete(recentRef.document(entry.id));
+                        }
+                    }
+                    List<Map<String, Object>> recent = new ArrayList<>();
+                    for (Entry entry : next) {
+                        recent.add(entry.toMap());
+                    }
+                    transaction.set(summaryRef, Collections.singletonMap("recent", recent));
+                    written.set(nextIds);
+                    return true;
+                }));
+                if (Boolean.TRUE.equals(applied)) {
+                    knownIds = written.get();
+                    return null;
+                }
+                seed = readCollection();
+            }
+        });
+    }
+
+    /**
+     * Orders events newest first, drops duplicate ids and keeps the {@link #MAX_RECENT} newest.
+     *
+     * @param entries The events
+     * @return The projection
+     */
+    static List<Entry> project(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(NEWEST_FIRST);
+        List<Entry> projected = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Entry entry : sorted) {
+            if (projected.size() == MAX_RECENT) {
+                break;
+            }
+            if (seen.add(entry.id)) {
+                projected.add(entry);
+            }
+        }
+        return projected;
+    }
+
+    private List<Entry> readCollection() throws Exception {
+        QuerySnapshot snapshot = Tasks.await(recentRef.get());
+        List<Entry> entries = new ArrayList<>();
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            Object date = document.get("date");
+            if (date instanceof Timestamp) {
+                entries.add(new Entry(document.getId(), (Timestamp) date));
+            } else {
+                //an invalid projected event is dropped by adding it with the oldest date
+                entries.add(new Entry(document.getId(), new Timestamp(0, 0)));
+            }
+        }
+        entries.sort(NEWEST_FIRST);
+        return entries;
+    }
+
+    private static List<Entry> parse(List<?> recent) {
+        List<Entry> entries = new ArrayList<>();
+        for (Object item : recent) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Object id = ((Map<?, ?>) item).get("mood_id");
+            Object date = ((Map<?, ?>) item).get("date");
+            if (id instanceof String && date instanceof Timestamp) {
+                entries.add(new Entry((String) id, (Timestamp) date));
+            }
+        }
+        entries.sort(NEWEST_FIRST);
+        return entries;
+    }
+
+    private static Set<String> ids(List<Entry> entries) {
+        Set<String> ids = new HashSet<>();
+        for (Entry entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,228 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Grid index of decoded mood positions that groups nearby moods into clusters for the map.
+ *
+ * At a zoom level the world is split into square cells, {@link #CELLS_PER_TILE} across a map tile,
+ * and the positions in a cell form one cluster at the mean of its positions. The grid of a zoom
+ * level is built once, the first time it is asked for, so the index should be queried off the
+ * main thread. Above {@link #MAX_CLUSTER_ZOOM} every position is its own cluster.
+ *
+ * Every position has a tag, the ordinal of its {@link EmotionalState} for the map, and a cluster
+ * reports the tag most of its positions have.
+ *
+ * The index is immutable once built, a changed set of moods needs a new index.
+ */
+public final class ClusterIndex {
+    public static final int CELLS_PER_TILE = 4;     //cells across a map tile, a 256dp tile gets 64dp cells
+    public static final int MAX_CLUSTER_ZOOM = 18;      //zoom levels above this don't cluster
+
+    /**
+     * A group of positions in one grid cell
+     */
+    public static final class Cluster {
+        private final long key;
+        private final int zoom;
+        private double latitudeSum;
+        private double longitudeSum;
+        private int size;
+        private int first;      //index of the first position in the cluster
+        private final int[] tagCounts;
+        private int tag = -1;       //most common tag, computed once the cluster is complete
+
+        private Cluster(long key, int zoom, int tagCount) {
+            this.key = key;
+            this.zoom = zoom;
+            this.tagCounts = new int[tagCount];
+        }
+
+        /**
+         * @return a key that is the same for the same cluster at the same zoom level, even in a new index
+         */
+        public String getKey() {
+            return zoom + "/" + key;
+        }
+
+        public double getLatitude() {
+            return latitudeSum / size;
+        }
+
+        public double getLongitude() {
+            return longitudeSum / size;
+        }
+
+        /**
+         * @return the number of positions in the cluster
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the index of a position in the cluster, the only one if its size is 1
+         */
+        public int getFirst() {
+            return first;
+        }
+
+        /**
+         * @return the tag most of the positions of the cluster have
+         */
+        public int getTag() {
+            return tag;
+        }
+    }
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] tags;
+    private final int tagCount;
+    private final List<Cluster>[] levels;       //clusters of every zoom level, built on first use
+    private final double south, west, north, east;      //bounds of all positions
+
+    /**
+     * Creates an index over the positions, the arrays are not copied and must not change.
+     *
+     * @param latitudes  Latitudes of the positions
+     * @param longitudes Longitudes of the positions
+     * @param tags       Tags of the positions, each less than tagCount
+     * @param tagCount   The number of different tags
+     * @throws IllegalArgumentException If the arrays have different lengths or a tag is out of range.
+     */
+    @SuppressWarnings("unchecked")
+    public ClusterIndex(double[] latitudes, double[] longitudes, int[] tags, int tagCount) {
+        if (latitudes.length != longitudes.length || latitudes.length != tags.length) {
+            throw new IllegalArgumentException("positions and tags need the same length");
+        }
+        double minLatitude = 90, maxLatitude = -90, minLongitude = 180, maxLongitude = -180;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (tags[i] < 0 || tags[i] >= tagCount) {
+                throw new IllegalArgumentException("tag out of range: " + tags[i]);
+            }
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.tags = tags;
+        this.tagCount = tagCount;
+        this.levels = new List[MAX_CLUSTER_ZOOM + 2];
+        this.south = minLatitude;
+        this.west = minLongitude;
+        this.north = maxLatitude;
+        this.east = maxLongitude;
+    }
+
+    /**
+     * @return the number of positions
+     */
+    public int size() {
+        return latitudes.length;
+    }
+
+    public double getSouth() {
+        return south;
+    }
+
+    public double getWest() {
+        return west;
+    }
+
+    public double getNorth() {
+        return north;
+    }
+
+    public double getEast() {
+        return east;
+    }
+
+    /**
+     * Finds the clusters of a zoom level whose center is in a viewport. A viewport crossing the
+     * antimeridian has a west bound greater than its east bound.
+     *
+     * @param zoom  The zoom level of the map, fractions are rounded down
+     * @param south Southern bound of the viewport
+     * @param west  Western bound of the viewport
+     * @param north Northern bound of the viewport
+     * @param east  Eastern bound of the viewport
+     * @return The visible clusters
+     */
+    public List<Cluster> clusters(float zoom, double south, double west, double north, double east) {
+        List<Cluster> visible = new ArrayList<>();
+        for (Cluster cluster : level(Math.max(0, (int) zoom))) {
+            double latitude = cluster.getLatitude();
+            double longitude = cluster.getLongitude();
+            boolean inLongitude = west <= east
+                    ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (inLongitude && latitude >= south && latitude <= north) {
+                visible.add(cluster);
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * @return every cluster of a zoom level, the grid is built the first time
+     */
+    private synchronized List<Cluster> level(int zoom) {
+        int level = Math.min(zoom, MAX_CLUSTER_ZOOM + 1);
+        if (levels[level] == null) {
+            levels[level] = build(level);
+        }
+        return levels[level];
+    }
+
+    private List<Cluster> build(int zoom) {
+        HashMap<Long, Cluster> cells = new HashMap<>();
+        List<Cluster> clusters = new ArrayList<>();
+        // Cells are square in the mercator projection of the map, so y is the projected latitude
+        double cellsAcross = (double) (1L << zoom) * CELLS_PER_TILE;
+        for (int i = 0; i < latitudes.length; i++) {
+            long key;
+            if (zoom > MAX_CLUSTER_ZOOM) {
+                key = i;
+            } else {
+                long x = (long) Math.floor((longitudes[i] + 180) / 360 * cellsAcross);
+                long y = (long) Math.floor(mercatorY(latitudes[i]) * cellsAcross);
+                key = x * (long) cellsAcross + y;
+            }
+            Cluster cluster = cells.get(key);
+            if (cluster == null) {
+                cluster = new Cluster(key, zoom, tagCount);
+                cluster.first = i;
+                cells.put(key, cluster);
+                clusters.add(cluster);
+            }
+            cluster.latitudeSum += latitudes[i];
+            cluster.longitudeSum += longitudes[i];
+            cluster.size++;
+            cluster.tagCounts[tags[i]]++;
+        }
+        for (Cluster cluster : clusters) {
+            int tag = 0;
+            for (int t = 1; t < tagCount; t++) {
+                if (cluster.tagCounts[t] > cluster.tagCounts[tag]) {
+                    tag = t;
+                }
+            }
+            cluster.tag = tag;
+        }
+        return clusters;
+    }
+
+    /**
+     * @return the latitude projected to the mercator y of the map, 0 at the top and 1 at the bottom
+     */
+    private static double mercatorY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, latitude))));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return Math.max(0, Math.min(1 - 1e-9, y));
+    }
+}
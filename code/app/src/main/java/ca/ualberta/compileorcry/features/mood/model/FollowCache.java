@@ -0,0 +1,169 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import ca.ualberta.compileorcry.domain.models.User;
+
+/**
+ * Membership cache for the follow relationships of the active user.
+ *
+ * The cache keeps four sets of usernames, each kept up to date by its own snapshot listener:
+ * - following: the users the active user follows
+ * - followers: the users that follow the active user
+ * - outgoing: the users the active user has requested to follow
+ * - incoming: the users that requested to follow the active user
+ *
+ * {@link FollowHelper} asks the cache first. A check that involves the active user is then
+ * answered locally once the matching set has received its first snapshot, any other check falls
+ * back to a point read. The listeners are attached the first time the active user is checked and
+ * moved over when the active user changes.
+ *
+ * @see FollowHelper
+ */
+public class FollowCache {
+    private static final FollowCache instance = new FollowCache();
+
+    /**
+     * A set of usernames mirrored from a query by a snapshot listener
+     */
+    private static class MembershipSet {
+        private final Set<String> members = ConcurrentHashMap.newKeySet();
+        private final Function<DocumentSnapshot, String> keyOf;     //maps a document of the query to the username it stands for
+        private ListenerRegistration registration;
+        private volatile boolean ready = false;     //true once the set received a snapshot
+
+        private MembershipSet(Function<DocumentSnapshot, String> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        private void attach(Query query) {
+            registration = query.addSnapshotListener((snapshot, e) -> {
+                if (e != null) {
+                    //the set stays not ready so checks keep using point reads
+                    Log.w("Firestore", "FollowCache listen failed.", e);
+                    return;
+                }
+                for (DocumentChange change : snapshot.getDocumentChanges()) {
+                    String key = keyOf.apply(change.getDocument());
+                    if (change.getType() == DocumentChange.Type.REMOVED) {
+                        members.remove(key);
+                    } else {
+                        members.add(key);
+                    }
+                }
+                ready = true;
+            });
+        }
+
+        private void detach() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+            ready = false;
+            members.clear();
+        }
+
+        /**
+         * @return true or false if the set is ready, otherwise null
+         */
+        private Boolean contains(String username) {
+            return ready ? members.contains(username) : null;
+        }
+    }
+
+    private final MembershipSet following = new MembershipSet(DocumentSnapshot::getId);
+    private final MembershipSet followers = new MembershipSet(DocumentSnapshot::getId);
+    //follow requests sent by the owner live under the requestee, users/{requestee}/follow_requests/{owner}
+    private final MembershipSet outgoing = new MembershipSet(doc -> doc.getReference().getParent().getParent().getId());
+    private final MembershipSet incoming = new MembershipSet(DocumentSnapshot::getId);
+    private String owner;       //the user the sets belong to
+
+    private FollowCache() {}
+
+    /**
+     * @return the cache of the app
+     */
+    public static FollowCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Checks if user1 is following user2 using the cache.
+     *
+     * @param user1 User1
+     * @param user2 User2
+     * @return true or false if the cache can answer, null if a read is needed
+     */
+    public Boolean isFollowing(String user1, String user2) {
+        if (watchActiveUser(user1)) {
+            return following.contains(user2);
+        }
+        if (watchActiveUser(user2)) {
+            return followers.contains(user1);
+        }
+        return null;
+    }
+
+    /**
+     * Checks if user1 has requested to follow user2 using the cache.
+     *
+     * @param user1 User1
+     * @param user2 User2
+     * @return true or false if the cache can answer, null if a read is needed
+     */
+    public Boolean hasRequested(String user1, String user2) {
+        if (watchActiveUser(user1)) {
+            return outgoing.contains(user2);
+        }
+        if (watchActiveUser(user2)) {
+            return incoming.contains(user1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the listeners and forgets every set.
+     */
+    public synchronized void clear() {
+        following.detach();
+        followers.detach();
+        outgoing.detach();
+        incoming.detach();
+        owner = null;
+    }
+
+    /**
+     * Makes sure the sets are listening for the active user if username is the active user.
+     *
+     * @param username The user a check is about
+     * @return true if username is the active user
+     */
+    private synchronized boolean watchActiveUser(String username) {
+        User activeUser = User.getActiveUser();
+        if (activeUser == null || username == null || !username.equals(activeUser.getUsername())) {
+            return false;
+        }
+        if (username.equals(owner)) {
+            return true;
+        }
+        clear();
+        owner = username;
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        following.attach(db.collection("users").document(owner).collection("following"));
+        followers.attach(db.collection("users").document(owner).collection("followers"));
+        outgoing.attach(db.collectionGroup("follow_requests").whereEqualTo("username", owner));
+        incoming.attach(db.collection("users").document(owner).collection("follow_requests"));
+        return true;
+    }
+}
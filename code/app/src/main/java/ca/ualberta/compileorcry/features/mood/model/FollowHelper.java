@@ -12,11 +12,12 @@ import com.google.firebase.firestore.Transaction;
 
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 import ca.ualberta.compileorcry.domain.models.User;
 //Comment creation assisted using deepseek
 //From: deepseek.com
@@ -27,10 +28,14 @@ import ca.ualberta.compileorcry.domain.models.User;
  * This class provides functionality to retrieve followers, followings, and follow requests,
  * as well as handle follow request creation, acceptance, and denial.
  *
- * <p>All methods in this class execute Firestore operations asynchronously using an {@link ExecutorService}
- * and return {@code null} in case of executor failure or timeout (10 seconds). It is crucial for callers
+ * <p>All methods in this class execute Firestore operations on the shared {@link AppExecutors#io()} pool
+ * and return {@code null} in case of a failure or timeout (10 seconds). It is crucial for callers
  * to check for {@code null} returns and handle potential {@link InterruptedException}s.</p>
  *
+ * <p>Every blocking method has an {@code Async} counterpart that returns a {@link CompletableFuture}
+ * instead, so callers on the main thread can compose them. {@link #getRelationship(String, String)}
+ * resolves the whole relationship between two users at once.</p>
+ *
  * <p>Typical usage includes:</p>
  * <ul>
  *   <li>Retrieving lists of followers/followings for profile display</li>
@@ -42,10 +47,48 @@ import ca.ualberta.compileorcry.domain.models.User;
  * valid username strings.</p>
  *
  * @see FirebaseFirestore
- * @see ExecutorService
+ * @see AppExecutors
  * @see User
  */
 public class FollowHelper {
+    /**
+     * The relationship of one user towards another, see {@link #getRelationship(String, String)}
+     */
+    public static class Relationship {
+        private final boolean following;
+        private final boolean requested;
+        private final boolean followedBy;
+
+        public Relationship(boolean following, boolean requested, boolean followedBy) {
+            this.following = following;
+            this.requested = requested;
+            this.followedBy = followedBy;
+        }
+
+        /**
+         * @return true if user1 follows user2
+         */
+        public boolean isFollowing() {
+            return following;
+        }
+
+        /**
+         * @return true if user1 has a pending follow request to user2
+         */
+        public boolean hasRequested() {
+            return requested;
+        }
+
+        /**
+         * @return true if user2 follows user1
+         */
+        public boolean isFollowedBy() {
+            return followedBy;
+        }
+    }
+
+    //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
+    private static final long TIMEOUT_SECONDS = 10;
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
 
     /**
@@ -57,43 +100,7 @@ public class FollowHelper {
      * @throws InterruptedException
      */
     public static ArrayList<String> getFollowers(String username) throws InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        ArrayList<String> followers = new ArrayList<>();
-        //Executor service to prevent deadlock on main
-        executor.execute(() -> {
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            QuerySnapshot followersSnapshot;
-            try {
-                //await the collection of all docs in the users following
-                followersSnapshot = Tasks.await(db.collection("users").document(username).collection("followers").get());
-                for (DocumentSnapshot doc : followersSnapshot.getDocuments()) {
-                    //loop over each document in the collection
-                    Map<String,Object> docData = doc.getData();
-                    if(docData == null){
-                        //sanity check to prevent nulls from going into the next if statement
-                        continue;
-                    }
-                    if(docData.containsKey("username") && docData.get("username") instanceof String){
-                        //ensure that username is in the doc before adding it into the followers
-                        followers.add((String) docData.get("username"));
-                    } else {
-                        //this should only occur if a bad document is made via the firestore console
-                        doc.getReference().delete();
-                    }
-                }
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        //initiates the shutdown sequence which causes the executor to terminate onces its finished
-        executor.shutdown();
-        //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
-        Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return null;
-        } else {
-            return followers;
-        }
+        return awaitOrNull(getUsernames(username, "followers"));
     }
     /**
      * Used to get a list of all followings of a user.
@@ -104,43 +111,7 @@ public class FollowHelper {
      * @throws InterruptedException
      */
     public static ArrayList<String> getFollowings(String username) throws InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        ArrayList<String> following = new ArrayList<>();
-        //Executor service to prevent deadlock on main
-        executor.execute(() -> {
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            QuerySnapshot followersSnapshot;
-            try {
-                //await the collection of all docs in the users following
-                followersSnapshot = Tasks.await(db.collection("users").document(username).collection("following").get());
-                for (DocumentSnapshot doc : followersSnapshot.getDocuments()) {
-                    //loop over each document in the collection
-                    Map<String,Object> docData = doc.getData();
-                    if(docData == null){
-                        //sanity check to prevent nulls from going into the next if statement
-                        continue;
-                    }
-                    if(docData.containsKey("username") && docData.get("username") instanceof String){
-                        //ensure that username is in the doc before adding it into the followings
-                        following.add((String) docData.get("username"));
-                    } else {
-                        //this should only occur if a bad document is made via the firestore console
-                        doc.getReference().delete();
-                    }
-                }
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        //initiates the shutdown sequence which causes the executor to terminate onces its finished
-        executor.shutdown();
-        //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
-        Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return null;
-        } else {
-            return following;
-        }
+        return awaitOrNull(getUsernames(username, "following"));
     }
 
     /**
@@ -151,25 +122,7 @@ public class FollowHelper {
      * @return Returns true on success, otherwise false
      */
     public static boolean unfollowUser(String user1, String user2) throws InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(()->{
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            try {
-                Tasks.await(db.runTransaction(new Transaction.Function<Void>() {
-                    @Override
-                    public Void apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
-                        transaction.delete(db.collection("users").document(user1).collection("following").document(user2));
-                        transaction.delete(db.collection("users").document(user2).collection("followers").document(user1));
-                        return null;
-                    }
-                }));
-            } catch (ExecutionException | InterruptedException e){
-                throw new RuntimeException(e);
-            }
-        });
-
-        executor.shutdown();
-        return executor.awaitTermination(10, TimeUnit.SECONDS);
+        return awaitOrNull(unfollow(user1, user2)) != null;
     }
 
     /**
@@ -180,10 +133,7 @@ public class FollowHelper {
      * @return Returns true if user1 is following user2, otherwise false.
      */
     public static boolean isUserFollowing(String user1, String user2) throws InterruptedException {
-        ArrayList<String> followers = getFollowers(user2);
-        if (followers == null)
-            return false;
-        return followers.contains(user1);
+        return Boolean.TRUE.equals(awaitOrNull(isUserFollowingAsync(user1, user2)));
     }
 
     /**
@@ -195,43 +145,7 @@ public class FollowHelper {
      * @throws InterruptedException
      */
     public static ArrayList<String> getFollowRequest(String username) throws InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        ArrayList<String> followRequests = new ArrayList<>();
-        //Executor service to prevent deadlock on main
-        executor.execute(() -> {
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            QuerySnapshot followersSnapshot;
-            try {
-                //await the collection of all docs in the users follow_requests
-                followersSnapshot = Tasks.await(db.collection("users").document(username).collection("follow_requests").get());
-                for (DocumentSnapshot doc : followersSnapshot.getDocuments()) {
-                    //loop over each document in the collection
-                    Map<String,Object> docData = doc.getData();
-                    if(docData == null){
-                        //sanity check to prevent nulls from going into the next if statement
-                        continue;
-                    }
-                    if(docData.containsKey("username") && docData.get("username") instanceof String){
-                        //ensure that username is in the doc before adding it into the requests
-                        followRequests.add((String) docData.get("username"));
-                    } else {
-                        //this should only occur if a bad document is made via the firestore console
-                        doc.getReference().delete();
-                    }
-                }
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        //initiates the shutdown sequence which causes the executor to terminate onces its finished
-        executor.shutdown();
-        //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
-        Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return null;
-        } else {
-            return followRequests;
-        }
+        return awaitOrNull(getUsernames(username, "follow_requests"));
     }
 
     /**
@@ -242,10 +156,7 @@ public class FollowHelper {
      * @return Returns true if user1 has requested to follow user2
      */
     public static boolean hasUserRequestedFollow(String user1, String user2) throws InterruptedException {
-        ArrayList<String> requests = getFollowRequest(user2);
-        if(requests == null)
-            return false;
-        return requests.contains(user1);
+        return Boolean.TRUE.equals(awaitOrNull(hasUserRequestedFollowAsync(user1, user2)));
     }
 
     /**
@@ -258,41 +169,7 @@ public class FollowHelper {
      * @throws InterruptedException
      */
     public static boolean handleFollowRequest(User user, String requester, boolean accept) throws InterruptedException {
-        boolean success = false;
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        //Executor service to prevent deadlock on main
-        executor.execute(() -> {
-            FirebaseFirestore db = FirebaseFirestore.getInstance();
-            try {
-                //Await transaction success, transaction allows us to ensure none all operations occur at once
-                Tasks.await(db.runTransaction(new Transaction.Function<Void>() {
-                    @Override
-                    public Void apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
-                        //follow request is deleted
-                        transaction.delete(db.collection("users").document(user.getUsername()).collection("follow_requests").document(requester));
-                        if(accept) {
-                            //if the request is accepted then then following and followers tables indicate the new relationship
-                            Map<String, Object> followerMap = Map.of("username", requester, "date", Timestamp.now());
-                            Map<String, Object> followingMap = Map.of("username", user.getUsername(), "date", Timestamp.now());
-                            transaction.set(db.collection("users").document(user.getUsername()).collection("followers").document(requester), followerMap);
-                            transaction.set(db.collection("users").document(requester).collection("following").document(user.getUsername()), followingMap);
-                        }
-                        return null;
-                    }
-                }));
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        //initiates the shutdown sequence which causes the executor to terminate onces its finished
-        executor.shutdown();
-        //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
-        success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return false;
-        } else {
-            return true;
-        }
+        return awaitOrNull(answerFollowRequest(user, requester, accept)) != null;
     }
 
     /**
@@ -304,27 +181,219 @@ public class FollowHelper {
      * @throws InterruptedException
      */
     public static boolean createFollowRequest(User user, String requestee) throws InterruptedException {
-        boolean success = false;
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        //Executor service to prevent deadlock on main
-        executor.execute(() -> {
+        return awaitOrNull(sendFollowRequest(user, requestee)) != null;
+    }
+
+    /**
+     * Gets the followers of a user without blocking the caller.
+     *
+     * @param username  the username of the user who you want to get their followers
+     * @return          a future completed with the usernames of the people who follow the user
+     */
+    public static CompletableFuture<ArrayList<String>> getFollowersAsync(String username) {
+        return getUsernames(username, "followers");
+    }
+
+    /**
+     * Gets the followings of a user without blocking the caller.
+     *
+     * @param username  the username of the user who you want to get their followings
+     * @return          a future completed with the usernames of the people the user follows
+     */
+    public static CompletableFuture<ArrayList<String>> getFollowingsAsync(String username) {
+        return getUsernames(username, "following");
+    }
+
+    /**
+     * Gets the follow requests of a user without blocking the caller.
+     *
+     * @param username  the username of the user who you want to get their follow requests
+     * @return          a future completed with the usernames of the people who requested to follow the user
+     */
+    public static CompletableFuture<ArrayList<String>> getFollowRequestAsync(String username) {
+        return getUsernames(username, "follow_requests");
+    }
+
+    /**
+     * Checks if user1 is following user2. Answered by the {@link FollowCache} when it involves the
+     * active user, otherwise by reading the single follower document.
+     *
+     * @param user1 User1
+     * @param user2 User2
+     * @return A future completed with true if user1 is following user2
+     */
+    public static CompletableFuture<Boolean> isUserFollowingAsync(String user1, String user2) {
+        Boolean cached = FollowCache.getInstance().isFollowing(user1, user2);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return documentExists(user2, "followers", user1);
+    }
+
+    /**
+     * Checks if user1 has requested to follow user2. Answered by the {@link FollowCache} when it
+     * involves the active user, otherwise by reading the single request document.
+     *
+     * @param user1 User1
+     * @param user2 User2
+     * @return A future completed with true if user1 has requested to follow user2
+     */
+    public static CompletableFuture<Boolean> hasUserRequestedFollowAsync(String user1, String user2) {
+        Boolean cached = FollowCache.getInstance().hasRequested(user1, user2);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return documentExists(user2, "follow_requests", user1);
+    }
+
+    /**
+     * Gets the relationship of user1 towards user2. Following, requested and followed-by are
+     * looked up with three point reads that run at the same time, or from the {@link FollowCache}.
+     *
+     * @param user1 The user looking at the relationship, usually the active user
+     * @param user2 The other user
+     * @return A future completed with the relationship
+     */
+    public static CompletableFuture<Relationship> getRelationship(String user1, String user2) {
+        CompletableFuture<Boolean> following = isUserFollowingAsync(user1, user2);
+        CompletableFuture<Boolean> requested = hasUserRequestedFollowAsync(user1, user2);
+        CompletableFuture<Boolean> followedBy = isUserFollowingAsync(user2, user1);
+        return CompletableFuture.allOf(following, requested, followedBy)
+                .thenApply(ignored -> new Relationship(following.join(), requested.join(), followedBy.join()));
+    }
+
+    /**
+     * Unfollows a user without blocking the caller. Assumes user1 is following user2.
+     *
+     * @param user1 The following user
+     * @param user2 The user who is to be unfollowed.
+     * @return A future completed once the user is unfollowed
+     */
+    public static CompletableFuture<Boolean> unfollowUserAsync(String user1, String user2) {
+        return unfollow(user1, user2);
+    }
+
+    /**
+     * Accepts or denies a follow request without blocking the caller.
+     *
+     * @param user      The user who is accepting the follow request
+     * @param requester     The username of the person who sent the follow request
+     * @param accept    True to accept, False to deny
+     * @return A future completed once the request is handled
+     */
+    public static CompletableFuture<Boolean> handleFollowRequestAsync(User user, String requester, boolean accept) {
+        return answerFollowRequest(user, requester, accept);
+    }
+
+    /**
+     * Creates a follow request without blocking the caller.
+     *
+     * @param user      The user who is creating the follow request
+     * @param requestee     The username of the person who is sent the follow request
+     * @return A future completed once the request is stored
+     */
+    public static CompletableFuture<Boolean> createFollowRequestAsync(User user, String requestee) {
+        return sendFollowRequest(user, requestee);
+    }
+
+    private static CompletableFuture<Boolean> documentExists(String username, String collection, String document) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        return AppExecutors.toFuture(db.collection("users").document(username).collection(collection).document(document).get())
+                .thenApply(DocumentSnapshot::exists);
+    }
+
+    /**
+     * Reads the usernames stored in one of the relationship collections of a user.
+     *
+     * @param username   The user who owns the collection
+     * @param collection One of "followers", "following" or "follow_requests"
+     * @return A future completed with the usernames in the collection
+     */
+    private static CompletableFuture<ArrayList<String>> getUsernames(String username, String collection) {
+        return AppExecutors.getInstance().io().submit(() -> {
             FirebaseFirestore db = FirebaseFirestore.getInstance();
-            Map<String,Object> requestMap = Map.of("username", user.getUsername(), "date", Timestamp.now());
-            try {
-                //attempts to add the follow_request
-                Tasks.await(db.collection("users").document(requestee).collection("follow_requests").document(user.getUsername()).set(requestMap));
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
+            ArrayList<String> usernames = new ArrayList<>();
+            //await the collection of all docs in the users collection
+            QuerySnapshot snapshot = Tasks.await(db.collection("users").document(username).collection(collection).get());
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                //loop over each document in the collection
+                Map<String,Object> docData = doc.getData();
+                if(docData == null){
+                    //sanity check to prevent nulls from going into the next if statement
+                    continue;
+                }
+                if(docData.containsKey("username") && docData.get("username") instanceof String){
+                    //ensure that username is in the doc before adding it into the list
+                    usernames.add((String) docData.get("username"));
+                } else {
+                    //this should only occur if a bad document is made via the firestore console
+                    doc.getReference().delete();
+                }
             }
+            return usernames;
+        });
+    }
+
+    private static CompletableFuture<Boolean> unfollow(String user1, String user2) {
+        return AppExecutors.getInstance().io().submit(() -> {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            Tasks.await(db.runTransaction(new Transaction.Function<Void>() {
+                @Override
+                public Void apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                    transaction.delete(db.collection("users").document(user1).collection("following").document(user2));
+                    transaction.delete(db.collection("users").document(user2).collection("followers").document(user1));
+                    return null;
+                }
+            }));
+            return true;
         });
-        //initiates the shutdown sequence which causes the executor to terminate onces its finished
-        executor.shutdown();
-        //timeout set to 10s, I've never had this take longer than 200ms, if this becomes an issue it can be increased
-        success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            return false;
-        } else {
+    }
+
+    private static CompletableFuture<Boolean> answerFollowRequest(User user, String requester, boolean accept) {
+        return AppExecutors.getInstance().io().submit(() -> {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            //Await transaction success, transaction allows us to ensure none all operations occur at once
+            Tasks.await(db.runTransaction(new Transaction.Function<Void>() {
+                @Override
+                public Void apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+                    //follow request is deleted
+                    transaction.delete(db.collection("users").document(user.getUsername()).collection("follow_requests").document(requester));
+                    if(accept) {
+                        //if the request is accepted then then following and followers tables indicate the new relationship
+                        Map<String, Object> followerMap = Map.of("username", requester, "date", Timestamp.now());
+                        Map<String, Object> followingMap = Map.of("username", user.getUsername(), "date", Timestamp.now());
+                        transaction.set(db.collection("users").document(user.getUsername()).collection("followers").document(requester), followerMap);
+                        transaction.set(db.collection("users").document(requester).collection("following").document(user.getUsername()), followingMap);
+                    }
+                    return null;
+                }
+            }));
+            return true;
+        });
+    }
+
+    private static CompletableFuture<Boolean> sendFollowRequest(User user, String requestee) {
+        return AppExecutors.getInstance().io().submit(() -> {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            Map<String,Object> requestMap = Map.of("username", user.getUsername(), "date", Timestamp.now());
+            //attempts to add the follow_request
+            Tasks.await(db.collection("users").document(requestee).collection("follow_requests").document(user.getUsername()).set(requestMap));
             return true;
+        });
+    }
+
+    /**
+     * Waits for a future of one of the helpers, for the blocking methods.
+     *
+     * @param future The future to wait for
+     * @return The result of the future, or null if it failed or didn't finish in time
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    private static <T> T awaitOrNull(CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
         }
     }
 }
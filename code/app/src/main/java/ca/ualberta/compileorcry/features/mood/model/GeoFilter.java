@@ -0,0 +1,163 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import com.firebase.geofire.GeoFireUtils;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoQueryBounds;
+import com.firebase.geofire.core.GeoHash;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.firebase.Timestamp;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filter of the MAP_CLOSE and MAP_PERSONAL_CLOSE query types, the mood events within a radius of
+ * a center, optionally only the ones in a time window or with an emotional state.
+ *
+ * The center is decoded and the GeoHash bounds of the circle are computed once when the filter is
+ * made, so queries and distance checks with the same filter don't repeat them.
+ *
+ * @see ca.ualberta.compileorcry.features.mood.data.MoodList
+ */
+public final class GeoFilter implements Serializable {
+    public static final double DEFAULT_RADIUS_METERS = 5000;    //radius of the Nearby feed
+
+    private final GeoHash center;
+    private final double radiusMeters;
+    private final Timestamp since;      //events older than this are filtered out, null for no limit
+    private final Timestamp until;      //events newer than this are filtered out, null for no limit
+    private final EmotionalState emotionalState;    //the only emotional state that matches, null for any
+    private transient GeoLocation location;     //decoded center, recomputed after deserialization
+    private transient double latitude;      //latitude of the decoded center, set with location
+    private transient double longitude;     //longitude of the decoded center, set with location
+    private transient List<GeoQueryBounds> bounds;      //GeoHash bounds covering the circle, recomputed after deserialization
+
+    /**
+     * Creates a filter for every event within the radius of the center.
+     *
+     * @param center       The center of the circle
+     * @param radiusMeters The radius of the circle in meters
+     * @throws IllegalArgumentException If the center is null or the radius isn't positive.
+     */
+    public GeoFilter(GeoHash center, double radiusMeters) {
+        this(center, radiusMeters, null, null, null);
+    }
+
+    /**
+     * Creates a filter for the events within the radius of the center that are in the time
+     * window and have the emotional state.
+     *
+     * @param center         The center of the circle
+     * @param radiusMeters   The radius of the circle in meters
+     * @param since          The oldest date that matches, null for no limit
+     * @param until          The newest date that matches, null for no limit
+     * @param emotionalState The emotional state that matches, null for any
+     * @throws IllegalArgumentException If the center is null or the radius isn't positive.
+     */
+    public GeoFilter(GeoHash center, double radiusMeters, Timestamp since, Timestamp until, EmotionalState emotionalState) {
+        if (center == null) {
+            throw new IllegalArgumentException("center cannot be null");
+        }
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("radius must be positive");
+        }
+        this.center = center;
+        this.radiusMeters = radiusMeters;
+        this.since = since;
+        this.until = until;
+        this.emotionalState = emotionalState;
+        getBounds();
+    }
+
+    public GeoHash getCenter() {
+        return center;
+    }
+
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    public Timestamp getSince() {
+        return since;
+    }
+
+    public Timestamp getUntil() {
+        return until;
+    }
+
+    public EmotionalState getEmotionalState() {
+        return emotionalState;
+    }
+
+    /**
+     * @return the decoded center
+     */
+    public GeoLocation getLocation() {
+        if (location == null) {
+            double[] position = GeoHashDecoder.decode(center.getGeoHashString());
+            latitude = position[0];
+            longitude = position[1];
+            location = new GeoLocation(latitude, longitude);
+        }
+        return location;
+    }
+
+    /**
+     * @return the GeoHash bounds that cover the circle, every event within it is in one of them
+     */
+    public List<GeoQueryBounds> getBounds() {
+        if (bounds == null) {
+            bounds = Collections.unmodifiableList(GeoFireUtils.getGeoHashQueryBounds(getLocation(), radiusMeters));
+        }
+        return bounds;
+    }
+
+    /**
+     * @param latitude  Latitude of a decoded location
+     * @param longitude Longitude of a decoded location
+     * @return True if the location is within the circle
+     */
+    public boolean contains(double latitude, double longitude) {
+        getLocation();
+        return GeoHashDecoder.distanceBetween(latitude, longitude, this.latitude, this.longitude) <= radiusMeters;
+    }
+
+    /**
+     * Checks an event against every part of the filter.
+     *
+     * @param event The event
+     * @return True if the event is within the circle, time window and has the emotional state
+     */
+    public boolean matches(MoodEvent event) {
+        if (event.getLocation() == null || !matchesDetails(event)) {
+            return false;
+        }
+        LatLng decoded = event.getDecodedLocation();
+        return contains(decoded.latitude, decoded.longitude);
+    }
+
+    /**
+     * Checks an event against the time window and emotional state, not the circle.
+     *
+     * @param event The event
+     * @return True if the event is in the time window and has the emotional state
+     */
+    public boolean matchesDetails(MoodEvent event) {
+        if (emotionalState != null && event.getEmotionalState() != emotionalState) {
+            return false;
+        }
+        Timestamp date = event.getTimestamp();
+        if (since != null && (date == null || date.compareTo(since) < 0)) {
+            return false;
+        }
+        return until == null || (date != null && date.compareTo(until) <= 0);
+    }
+
+    /**
+     * @return a filter for the same events within a new circle
+     */
+    public GeoFilter moveTo(GeoHash center, double radiusMeters) {
+        return new GeoFilter(center, radiusMeters, since, until, emotionalState);
+    }
+}
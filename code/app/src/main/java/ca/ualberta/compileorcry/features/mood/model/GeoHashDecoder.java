@@ -0,0 +1,122 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the geohash strings of the location field into latitudes and longitudes without
+ * allocating, so thousands of them can be decoded into primitive arrays for the map and geo
+ * queries.
+ *
+ * A geohash is decoded to the center of its cell, the same position GeoFire decodes it to.
+ * Distances are great circle distances on the mean radius of the earth that GeoFire uses.
+ *
+ * @see MoodEvent#decodeLocations(List, double[], double[])
+ * @see GeoFilter
+ */
+public final class GeoHashDecoder {
+    private static final double EARTH_MEAN_RADIUS_METERS = 6371008.8;   //the radius GeoFire measures distances with
+    private static final int[] BASE32_VALUES = new int[128];    //value of every geohash character, -1 if invalid
+
+    static {
+        Arrays.fill(BASE32_VALUES, -1);
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        for (int i = 0; i < base32.length(); i++) {
+            BASE32_VALUES[base32.charAt(i)] = i;
+        }
+    }
+
+    private GeoHashDecoder() {}
+
+    /**
+     * Decodes a geohash into the arrays at an index.
+     *
+     * @param geoHash    The geohash
+     * @param latitudes  Receives the latitude
+     * @param longitudes Receives the longitude
+     * @param index      The index to write at
+     * @throws IllegalArgumentException If the geohash has an invalid character.
+     */
+    public static void decode(String geoHash, double[] latitudes, double[] longitudes, int index) {
+        decode(geoHash, latitudes, index, longitudes, index);
+    }
+
+    /**
+     * Decodes a geohash.
+     *
+     * @param geoHash The geohash
+     * @return The latitude and longitude
+     * @throws IllegalArgumentException If the geohash has an invalid character.
+     */
+    public static double[] decode(String geoHash) {
+        double[] position = new double[2];
+        decode(geoHash, position, 0, position, 1);
+        return position;
+    }
+
+    private static void decode(String geoHash, double[] latitudes, int latitudeIndex, double[] longitudes, int longitudeIndex) {
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        boolean even = true;    //bits alternate between longitude and latitude, starting with longitude
+        for (int i = 0; i < geoHash.length(); i++) {
+            char c = geoHash.charAt(i);
+            int value = c < BASE32_VALUES.length ? BASE32_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("invalid geohash: " + geoHash);
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((value >> bit) & 1) == 1;
+                if (even) {
+                    double mid = (minLongitude + maxLongitude) / 2;
+                    if (set) {
+                        minLongitude = mid;
+                    } else {
+                        maxLongitude = mid;
+                    }
+                } else {
+                    double mid = (minLatitude + maxLatitude) / 2;
+                    if (set) {
+                        minLatitude = mid;
+                    } else {
+                        maxLatitude = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        latitudes[latitudeIndex] = (minLatitude + maxLatitude) / 2;
+        longitudes[longitudeIndex] = (minLongitude + maxLongitude) / 2;
+    }
+
+    /**
+     * Decodes geohashes into the arrays, in order.
+     *
+     * @param geoHashes  The geohashes, null ones are decoded to NaN
+     * @param latitudes  Receives the latitudes, at least as long as geoHashes
+     * @param longitudes Receives the longitudes, at least as long as geoHashes
+     * @throws IllegalArgumentException If a geohash has an invalid character.
+     */
+    public static void decodeAll(List<String> geoHashes, double[] latitudes, double[] longitudes) {
+        for (int i = 0; i < geoHashes.size(); i++) {
+            String geoHash = geoHashes.get(i);
+            if (geoHash == null) {
+                latitudes[i] = Double.NaN;
+                longitudes[i] = Double.NaN;
+            } else {
+                decode(geoHash, latitudes, longitudes, i);
+            }
+        }
+    }
+
+    /**
+     * @return the great circle distance in meters between two positions
+     */
+    public static double distanceBetween(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return EARTH_MEAN_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -1,6 +1,5 @@
 package ca.ualberta.compileorcry.features.mood.model;
 
-import com.firebase.geofire.GeoLocation;
 import com.firebase.geofire.core.GeoHash;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
@@ -15,16 +14,18 @@ import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeoutException;
+
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 
 /**
  * The MoodEvent class represents a single mood event entry in the application.
@@ -50,15 +51,18 @@ public class MoodEvent implements Serializable {
 
     public void setLocation(GeoHash location) {
         this.location = location;
+        this.decodedLocation = null;
     }
 
     private Timestamp timestamp;
     private EmotionalState emotionalState;
     private String picture;
     private String trigger;
+    private transient String triggerLowercase;     //lowercase trigger kept for reason searches, null until needed
     private String socialSituation;
     private String username;
     private GeoHash location;
+    private transient LatLng decodedLocation;      //decoded location kept for the map and geo filters, null until needed
     private Boolean isPublic;
     private  Boolean commentsLoaded = false;
     private ArrayList<Comment> comments = new ArrayList<>();
@@ -150,6 +154,18 @@ public class MoodEvent implements Serializable {
         return trigger;
     }
 
+    /**
+     * Returns the lowercase trigger text, computed once so reason searches don't lowercase it again.
+     *
+     * @return The lowercase trigger text, or null if not set
+     */
+    public String getTriggerLowercase() {
+        if (triggerLowercase == null && trigger != null) {
+            triggerLowercase = TriggerIndex.lowercase(trigger);
+        }
+        return triggerLowercase;
+    }
+
     /**
      * Returns the social situation context for this mood event.
      *
@@ -178,11 +194,33 @@ public class MoodEvent implements Serializable {
     }
 
     /**
-     * Decodes a GeoHash into latitude and longitude.
+     * Decodes the GeoHash into latitude and longitude, only the first time it is needed.
+     *
+     * @return The decoded location, or null if not set
      */
     public LatLng getDecodedLocation() {
-        GeoLocation geoLocation = GeoHash.locationFromHash(location.getGeoHashString());
-        return new LatLng(geoLocation.latitude, geoLocation.longitude);
+        LatLng decoded = decodedLocation;
+        if (decoded == null && location != null) {
+            double[] position = GeoHashDecoder.decode(location.getGeoHashString());
+            decoded = new LatLng(position[0], position[1]);
+            decodedLocation = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes the locations of many mood events into arrays, reusing the locations they already decoded.
+     *
+     * @param events     The mood events, those without a location are decoded to NaN
+     * @param latitudes  Receives the latitudes, at least as long as events
+     * @param longitudes Receives the longitudes, at least as long as events
+     */
+    public static void decodeLocations(List<MoodEvent> events, double[] latitudes, double[] longitudes) {
+        for (int i = 0; i < events.size(); i++) {
+            LatLng decoded = events.get(i).getDecodedLocation();
+            latitudes[i] = decoded == null ? Double.NaN : decoded.latitude;
+            longitudes[i] = decoded == null ? Double.NaN : decoded.longitude;
+        }
     }
 
     /**
@@ -238,6 +276,7 @@ public class MoodEvent implements Serializable {
      */
     public void setTrigger(String trigger) {
         this.trigger = trigger;
+        this.triggerLowercase = null;
     }
 
     /**
@@ -293,6 +332,9 @@ public class MoodEvent implements Serializable {
         putIfNotNull(map, "date", this.timestamp);
         putIfNotNull(map, "social_situation", this.socialSituation);
         putIfNotNull(map, "trigger", this.trigger);
+        if(this.trigger != null){
+            map.put(TriggerIndex.FIELD, TriggerIndex.tokens(this.trigger));
+        }
         putIfNotNull(map, "is_public", this.isPublic);
         return map;
     }
@@ -332,6 +374,24 @@ public class MoodEvent implements Serializable {
      * @throws RuntimeException
      */
     public ArrayList<Comment> getComments(String moodUsername) throws InterruptedException {
+        CompletableFuture<ArrayList<Comment>> future = getCommentsAsync(moodUsername);
+        try {
+            return future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            comments = null;
+            return null;
+        }
+    }
+
+    /**
+     * Gets the comments of a moodEvent without blocking the caller.
+     * The comments are only read from the firestore the first time or after {@link #reloadComments}.
+     *
+     * @param moodUsername Use to pass in the username of MoodEvent
+     * @return A future completed with the list of Comments
+     * @throws RuntimeException If the moodEvent is private or both usernames are null
+     */
+    public CompletableFuture<ArrayList<Comment>> getCommentsAsync(String moodUsername) {
         if(!this.isPublic){
             throw new RuntimeException("private moodEvents cannot have comments");
         }
@@ -341,46 +401,36 @@ public class MoodEvent implements Serializable {
         if(moodUsername == null){
             throw new RuntimeException("username and moodEvent username are null");
         }
-        if(!commentsLoaded){
-            //Executor prevents deadlock due to the firestore operations callbacks hapening on main
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            //Runs the firestore stuff
-            String finalUsername = moodUsername;
+        if(commentsLoaded){
+            return CompletableFuture.completedFuture(comments);
+        }
+        String finalUsername = moodUsername;
+        //Runs the firestore stuff on the io pool, this prevents deadlock due to the firestore callbacks happening on main
+        return AppExecutors.getInstance().io().submit(() -> {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
             semiphore.acquire();
-            executor.execute(() -> {
-                FirebaseFirestore db = FirebaseFirestore.getInstance();
-                QuerySnapshot commentsSnapshot;
-                try {
-                    commentsSnapshot = Tasks.await(db.collection("users").document(finalUsername).collection("mood_events").document(this.id).collection("comments").get());
-                    comments.clear();
-                    for (DocumentSnapshot doc : commentsSnapshot.getDocuments()) {
-                        Map<String,Object> docData = doc.getData();
-                        if(this.isValidCommentMap(docData)){
-                            comments.add(new Comment(this,
-                                (String) docData.get("username"),
-                                doc.getId(),
-                                Timestamp.now(),
-                                (String) docData.get("comment_message")));
-                        } else {
-                            doc.getReference().delete();
-                        }
+            try {
+                QuerySnapshot commentsSnapshot = Tasks.await(db.collection("users").document(finalUsername).collection("mood_events").document(this.id).collection("comments").get());
+                ArrayList<Comment> loaded = new ArrayList<>();
+                for (DocumentSnapshot doc : commentsSnapshot.getDocuments()) {
+                    Map<String,Object> docData = doc.getData();
+                    if(this.isValidCommentMap(docData)){
+                        loaded.add(new Comment(this,
+                            (String) docData.get("username"),
+                            doc.getId(),
+                            Timestamp.now(),
+                            (String) docData.get("comment_message")));
+                    } else {
+                        doc.getReference().delete();
                     }
-                    semiphore.release();
-                } catch (ExecutionException | InterruptedException e) {
-                    semiphore.release();
-                    throw new RuntimeException(e);
                 }
-            });
-            executor.shutdown();
-            Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-            if(!success){
-                comments = null;
-            } else {
+                comments = loaded;
                 commentsLoaded = true;
                 return comments;
+            } finally {
+                semiphore.release();
             }
-        }
-        return comments;
+        });
     }
 
     /**
@@ -494,10 +544,22 @@ public class MoodEvent implements Serializable {
      * @throws InterruptedException
      */
     public String hasComments(String username) throws InterruptedException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        AtomicReference<String> returnString = new AtomicReference<>("null");
-        // Runs the firestore stuff
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        CompletableFuture<Boolean> future = hasCommentsAsync(username);
+        try {
+            return future.get(10, TimeUnit.SECONDS) ? "yes" : "no";
+        } catch (ExecutionException | TimeoutException e) {
+            return "failed";
+        }
+    }
+
+    /**
+     * Checks if a MoodEvent has comments without blocking the caller.
+     *
+     * @param username      The username of the comment owner, will be overwritten if the parent event has a username
+     * @return              A future completed with true if the moodEvent has comments
+     * @throws RuntimeException If both usernames are null
+     */
+    public CompletableFuture<Boolean> hasCommentsAsync(String username) {
         if(!(this.username == null)){
             username = this.username;
         }
@@ -505,26 +567,10 @@ public class MoodEvent implements Serializable {
             throw new RuntimeException("username and moodEvent username are null");
         }
         String finalUsername = username;
-        executor.execute(() -> {
-            QuerySnapshot commentsSnapshot;
-            try {
-                commentsSnapshot = Tasks.await(db.collection("users").document(finalUsername).collection("mood_events").document(this.id).collection("comments").get());
-                if(commentsSnapshot.size() <= 0){
-                    returnString.set("no");
-                } else {
-                    returnString.set("yes");
-                }
-            } catch (ExecutionException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        return AppExecutors.getInstance().io().submit(() -> {
+            FirebaseFirestore db = FirebaseFirestore.getInstance();
+            QuerySnapshot commentsSnapshot = Tasks.await(db.collection("users").document(finalUsername).collection("mood_events").document(this.id).collection("comments").limit(1).get());
+            return commentsSnapshot.size() > 0;
         });
-        executor.shutdown();
-        Boolean success = executor.awaitTermination(10, TimeUnit.SECONDS);
-        if(!success){
-            returnString.set("failed");
-            return returnString.get();
-        } else {
-            return returnString.get();
-        }
     }
 }
\ No newline at end of file
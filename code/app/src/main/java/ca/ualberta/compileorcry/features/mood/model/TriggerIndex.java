@@ -0,0 +1,84 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tokenizer for the trigger_tokens field of mood event documents, which lets reason searches be
+ * narrowed by firestore with an array-contains query.
+ *
+ * The trigger is lowercased and split into words, every word is stored as its distinct substrings
+ * of {@link #TOKEN_LENGTH} characters and words shorter than that are stored whole. A trigger that
+ * contains a search also contains every token of the longest word of the search, so a query for
+ * one of those tokens returns every match plus some events the substring check then drops.
+ *
+ * @see MoodEvent#toFireStoreMap()
+ */
+public final class TriggerIndex {
+    public static final String FIELD = "trigger_tokens";    //name of the array field on mood event documents
+    public static final int TOKEN_LENGTH = 3;   //words are tokenized into substrings of this length
+
+    private TriggerIndex() {}
+
+    /**
+     * Lowercases a trigger or search the same way for storing and searching.
+     *
+     * @param text The text
+     * @return The lowercase text
+     */
+    public static String lowercase(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a trigger into its search tokens.
+     *
+     * @param trigger The trigger text
+     * @return The distinct tokens of the trigger
+     */
+    public static List<String> tokens(String trigger) {
+        LinkedHashSet<String> tokens = new LinkedHashSet<>();
+        for (String word : words(lowercase(trigger))) {
+            if (word.length() < TOKEN_LENGTH) {
+                tokens.add(word);
+                continue;
+            }
+            for (int start = 0; start + TOKEN_LENGTH <= word.length(); start++) {
+                tokens.add(word.substring(start, start + TOKEN_LENGTH));
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * Picks the token a search can be narrowed by, the first token of its longest word.
+     *
+     * @param search The search text, any case
+     * @return The token, or null if no word of the search is long enough so every event has to be checked
+     */
+    public static String searchToken(String search) {
+        String longest = "";
+        for (String word : words(lowercase(search))) {
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        if (longest.length() < TOKEN_LENGTH) {
+            // A short word can be the inside of a longer word, which isn't stored as a token
+            return null;
+        }
+        return longest.substring(0, TOKEN_LENGTH);
+    }
+
+    private static List<String> words(String lower) {
+        List<String> words = new ArrayList<>();
+        for (String word : lower.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -55,9 +55,9 @@ import java.util.UUID;
 
 import ca.ualberta.compileorcry.BuildConfig;
 import ca.ualberta.compileorcry.R;
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 import ca.ualberta.compileorcry.domain.models.User;
 import ca.ualberta.compileorcry.features.mood.data.MoodList;
-import ca.ualberta.compileorcry.features.mood.data.QueryType;
 import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
 
@@ -286,26 +286,23 @@ public class NewFragment extends Fragment {
         MoodEvent event = new MoodEvent(EmotionalState.valueOf(emotionalState.toUpperCase()),
                 timestamp, trigger, socialSituation, uploadedImagePath, isPublic, location);
 
-        MoodList.createMoodList(User.getActiveUser(), QueryType.HISTORY_MODIFIABLE,
-                new MoodList.MoodListListener() {
-                    @Override
-                    public void returnMoodList(MoodList moodList) {
-                        moodList.addMoodEvent(event);
-                        clear();
-                        Toast.makeText(getContext(), "Mood event created successfully!",
-                                Toast.LENGTH_SHORT).show();
-                    }
-
-                    @Override
-                    public void updatedMoodList() {
-                        // Handled automatically
-                    }
-
-                    @Override
-                    public void onError(Exception e) {
-                        Log.e("DataList",e.getMessage());
-                    }
-                }, null);
+        // Only a write, so no MoodList and no snapshot listeners are opened for it
+        MoodList.storeMoodEvent(User.getActiveUser(), event).whenCompleteAsync((ignored, e) -> {
+            if (e != null) {
+                Log.e("NewFragment", "Mood event could not be created", e);
+            }
+            if (getContext() == null) { // The fragment was left before the write finished
+                return;
+            }
+            if (e != null) {
+                Toast.makeText(getContext(), "Mood event could not be created, please try again.",
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
+            clear();
+            Toast.makeText(getContext(), "Mood event created successfully!",
+                    Toast.LENGTH_SHORT).show();
+        }, AppExecutors.getInstance().mainThread());
     }
 
     /**
@@ -84,14 +84,13 @@ public class CommentViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
-            try {
-                List<Comment> loadedComments = moodEvent.getComments(username);
-                commentsLiveData.postValue(loadedComments);
-            } catch (InterruptedException e) {
-                Log.e("CommentViewModel", "Failed to load comments", e);
+        moodEvent.getCommentsAsync(username).whenComplete((loadedComments, error) -> {
+            if (error != null) {
+                Log.e("CommentViewModel", "Failed to load comments", error);
+                return;
             }
-        }).start();
+            commentsLiveData.postValue(loadedComments);
+        });
     }
 
     /**
@@ -106,15 +105,19 @@ public class CommentViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
-            try {
-                moodEvent.reloadComments(username);
-                List<Comment> updatedComments = moodEvent.getComments(username);
-                commentsLiveData.postValue(updatedComments);
-            } catch (InterruptedException e) {
-                Log.e("CommentViewModel", "Failed to reload comments", e);
+        try {
+            moodEvent.reloadComments(username);
+        } catch (InterruptedException e) {
+            Log.e("CommentViewModel", "Failed to reload comments", e);
+            return;
+        }
+        moodEvent.getCommentsAsync(username).whenComplete((updatedComments, error) -> {
+            if (error != null) {
+                Log.e("CommentViewModel", "Failed to reload comments", error);
+                return;
             }
-        }).start();
+            commentsLiveData.postValue(updatedComments);
+        });
     }
 
     /**
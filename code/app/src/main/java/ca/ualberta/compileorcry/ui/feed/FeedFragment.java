@@ -24,10 +24,12 @@ import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.firebase.geofire.core.GeoHash;
 import com.google.android.gms.location.LocationServices;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,9 +37,12 @@ import ca.ualberta.compileorcry.R;
 import ca.ualberta.compileorcry.databinding.FragmentFeedBinding;
 import ca.ualberta.compileorcry.domain.models.User;
 import ca.ualberta.compileorcry.features.mood.data.MoodList;
+import ca.ualberta.compileorcry.features.mood.data.MoodListDelta;
 import ca.ualberta.compileorcry.features.mood.data.QueryType;
 import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
+import ca.ualberta.compileorcry.features.mood.model.GeoFilter;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+import ca.ualberta.compileorcry.ui.map.MapFragment;
 
 /**
  * The FeedFragment class displays a feed of mood events, either from the user's
@@ -49,6 +54,7 @@ import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
  * - Spinner controls for selecting feed type and filters
  * - Navigation to create new mood events
  * - Querying mood events based on selected filters
+ * - Loading older mood events a page at a time as the user scrolls
  *
  * Outstanding issues:
  * - Some filter combinations may not be properly handled
@@ -60,11 +66,17 @@ public class FeedFragment extends Fragment {
     private FeedViewModel feedViewModel;
     private boolean userClicked = false;
     private MoodList moodList;
+    private QueryType feedQueryType;    //query type of the shown MoodList, handed to the map
+    private Serializable feedFilter;     //filter of the shown MoodList, handed to the map
     private ArrayAdapter<String> filterAdapter;
     private MoodEventAdapter adapter;
     // Feed type options
     private static final String[] FEED_TYPES = {"Following", "History"};
     // Filter options
+    // Number of mood events loaded per page, other screens use it to share the query of the feed
+    public static final int PAGE_SIZE = 20;
+    // Load the next page when this many events or fewer are left below the screen
+    private static final int LOAD_MORE_THRESHOLD = 5;
     private ArrayList<String> FILTER_OPTIONS = new ArrayList<>(List.of("","None", "Recent", "State", "Reason", "Nearby"));
 
     @Override
@@ -135,8 +147,18 @@ public class FeedFragment extends Fragment {
 
         // Initialize RecyclerView
         adapter = new MoodEventAdapter(new ArrayList<>(), this::onMoodEventClick);
-        binding.recyclerViewMoodHistory.setLayoutManager(new LinearLayoutManager(requireContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
+        binding.recyclerViewMoodHistory.setLayoutManager(layoutManager);
         binding.recyclerViewMoodHistory.setAdapter(adapter);
+        binding.recyclerViewMoodHistory.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // Load the next page once the user scrolls near the end of the loaded events
+                if (dy > 0) {
+                    loadMoreIfNearEnd();
+                }
+            }
+        });
 
         // Search FAB
         binding.fabUserSearch.setOnClickListener(v -> {
@@ -204,6 +226,7 @@ public class FeedFragment extends Fragment {
             feedViewModel.setUser(User.getActiveUser());
             feedViewModel.setFeedType(null);
             feedViewModel.setFilterType(null);
+            feedViewModel.setMoodList(null);
             feedViewModel.setMoodEvents(new ArrayList<>());
 
         }
@@ -267,7 +290,8 @@ public class FeedFragment extends Fragment {
             case "Nearby":
                 getCurrentLocation(geoHash -> {
                     if (geoHash != null) {
-                        fetchMoodEvents(isFollowing ? QueryType.MAP_CLOSE : QueryType.MAP_PERSONAL_CLOSE, geoHash);
+                        fetchMoodEvents(isFollowing ? QueryType.MAP_CLOSE : QueryType.MAP_PERSONAL_CLOSE,
+                                new GeoFilter(geoHash, GeoFilter.DEFAULT_RADIUS_METERS));
                     } else {
                         Toast.makeText(requireContext(), "Location unavailable", Toast.LENGTH_SHORT).show();
                     }
@@ -297,12 +321,15 @@ public class FeedFragment extends Fragment {
 
     private void fetchMoodEvents(QueryType queryType, Object filterValue) {
         StackTraceElement[] cause = Thread.currentThread().getStackTrace();
-        MoodList.createMoodList(User.getActiveUser(), queryType, new MoodList.MoodListListener() {
+        MoodList.MoodListListener moodListListener = new MoodList.MoodListListener() {
+            private MoodList ownMoodList;   //the MoodList this listener belongs to
+
             @Override
             public void returnMoodList(MoodList initMoodList) {
-                initMoodList.clearMoodEvents();
+                ownMoodList = initMoodList;
                 moodList = initMoodList;
-                feedViewModel.setMoodEvents(moodList.getMoodEvents());
+                feedViewModel.setMoodEvents(moodList.getMoodEventsView());
+                binding.recyclerViewMoodHistory.post(FeedFragment.this::loadMoreIfNearEnd);
             }
 
             @Override
@@ -314,10 +341,58 @@ public class FeedFragment extends Fragment {
             public void updatedMoodList() {
                 requireActivity().runOnUiThread(() -> {
                     adapter.notifyDataSetChanged();
+                    binding.recyclerViewMoodHistory.post(FeedFragment.this::loadMoreIfNearEnd);
                 });
                 // Handled automatically
             }
-        }, filterValue);
+
+            @Override
+            public void updatedMoodList(MoodListDelta delta) {
+                // Snapshots are delivered on the main thread so the adapter can be updated directly
+                if (ownMoodList != null && ownMoodList == moodList
+                        && adapter.isDisplaying(ownMoodList.getMoodEventsView())) {
+                    adapter.applyDelta(delta);
+                    binding.recyclerViewMoodHistory.post(FeedFragment.this::loadMoreIfNearEnd);
+                }
+            }
+        };
+        // The ViewModel closes the MoodList of the previous fetch, so only one MoodList listens at a time
+        feedQueryType = queryType;
+        feedFilter = (Serializable) filterValue;    //every filter of the feed is an enum, String or GeoFilter
+        feedViewModel.setMoodList(openFeedQuery(queryType, moodListListener, filterValue));
+    }
+
+    /**
+     * Loads the next page while the end of the loaded events is on screen. Filters that run on
+     * the device can leave a page with few or no matches, a list too short to scroll would never
+     * reach the older pages otherwise. Every loaded page calls this again until the screen is
+     * filled or there are no more pages.
+     */
+    private void loadMoreIfNearEnd() {
+        if (binding == null || moodList == null || !moodList.hasMorePages()) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) binding.recyclerViewMoodHistory.getLayoutManager();
+        if (layoutManager != null
+                && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+            moodList.loadMore();
+        }
+    }
+
+    /**
+     * Opens the MoodList the feed shows for a query type and filter.
+     *
+     * @param queryType   The query type
+     * @param listener    The listener of the MoodList
+     * @param filterValue The filter of the query type, null if it has none
+     * @return The MoodList, which has to be closed by the caller
+     */
+    private static MoodList openFeedQuery(QueryType queryType, MoodList.MoodListListener listener, Object filterValue) {
+        if (queryType == QueryType.MAP_CLOSE || queryType == QueryType.MAP_PERSONAL_CLOSE) {
+            // Geo queries can't be paged as they are ordered by location
+            return MoodList.createMoodList(User.getActiveUser(), queryType, listener, filterValue);
+        }
+        return MoodList.createPagedMoodList(User.getActiveUser(), queryType, listener, filterValue, PAGE_SIZE);
     }
 
     private void showReasonInputDialog(boolean isFollowing) {
@@ -392,27 +467,37 @@ public class FeedFragment extends Fragment {
 
     private void navigateToMap() {
         List<MoodEvent> moodEvents = feedViewModel.getMoodEvents().getValue();
-        if (moodEvents == null || moodEvents.isEmpty()) {
-            Toast.makeText(requireContext(), "No locatable events", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        ArrayList<MoodEvent> moodEventsWithGeoHash = new ArrayList<>();
-        for (MoodEvent mood : moodEvents) {
-            if (mood.getLocation() != null) {
-                moodEventsWithGeoHash.add(mood);
+        boolean hasLocatedEvent = false;
+        if (moodEvents != null) {
+            for (MoodEvent mood : moodEvents) {
+                if (mood.getLocation() != null) {
+                    hasLocatedEvent = true;
+                    break;
+                }
             }
         }
 
-        if (!moodEventsWithGeoHash.isEmpty()) {
+        // Older pages the feed didn't load may have located events, the map reads all of them
+        boolean mayHaveLocatedEvent = hasLocatedEvent || (moodList != null && moodList.hasMorePages());
+        if (mayHaveLocatedEvent && feedQueryType != null) {
+            // Only the query is handed over, the map opens it unpaged
             Bundle bundle = new Bundle();
-            bundle.putSerializable("moodEvents", moodEventsWithGeoHash);
+            bundle.putSerializable(MapFragment.ARG_QUERY_TYPE, feedQueryType);
+            bundle.putSerializable(MapFragment.ARG_FILTER, feedFilter);
             findNavController(requireView()).navigate(R.id.navigation_map, bundle);
         } else {
             Toast.makeText(requireContext(), "No locatable events", Toast.LENGTH_SHORT).show();
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        // The feed is fetched again when the view is recreated, so nothing has to listen until then
+        feedViewModel.setMoodList(null);
+        moodList = null;
+        super.onDestroyView();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         outState.putSerializable("feedViewModel",this.feedViewModel);
@@ -8,10 +8,10 @@ import androidx.lifecycle.ViewModel;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.features.mood.data.MoodList;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
 
 /**
@@ -21,8 +21,9 @@ import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
  *
  * The FeedViewModel is responsible for:
  * - Storing and managing the list of mood events to be displayed
- * - Ensuring mood events are always sorted in reverse chronological order
+ * - Exposing mood events in the reverse chronological order provided by MoodList
  * - Providing LiveData for the UI to observe changes
+ * - Owning the MoodList of the feed, which is closed when it is replaced or the ViewModel is cleared
  */
 public class FeedViewModel extends ViewModel implements Serializable {
     /** LiveData containing the list of mood events to display */
@@ -30,6 +31,8 @@ public class FeedViewModel extends ViewModel implements Serializable {
     private String feedType;
     private String filterType;
     User user;
+    /** The MoodList the feed is fetched from, not saved with the ViewModel as it holds listeners */
+    private transient MoodList moodList;
 
     /**
      * Returns LiveData containing the list of mood events.
@@ -43,19 +46,38 @@ public class FeedViewModel extends ViewModel implements Serializable {
     }
 
     /**
-     * Updates the list of mood events and ensures they are sorted in reverse chronological order.
+     * Updates the list of mood events to display.
      * This method is typically called when new mood events are fetched from the repository.
+     * The list is expected to already be in reverse chronological order, which is the case for
+     * {@link ca.ualberta.compileorcry.features.mood.data.MoodList#getMoodEventsView()}.
      *
      * @param events The new list of mood events to display
      */
     public void setMoodEvents(List<MoodEvent> events) {
         Log.d("FeedViewModel", "setMoodEvents() called with " + events.size() + " moods.");
+        moodEvents.setValue(events);
+    }
+
+    /**
+     * Returns the MoodList the feed is fetched from.
+     *
+     * @return The MoodList, or null if none was fetched
+     */
+    public MoodList getMoodList() {
+        return moodList;
+    }
 
-        // Always return list in rev. chron. order
-        if (events != null) {
-            Collections.sort(events, (m1, m2) -> m2.getTimestamp().compareTo(m1.getTimestamp()));
+    /**
+     * Replaces the MoodList the feed is fetched from and closes the previous one, so its
+     * listeners stop delivering snapshots to a feed that no longer shows it.
+     *
+     * @param moodList The new MoodList, or null to only close the previous one
+     */
+    public void setMoodList(MoodList moodList) {
+        if (this.moodList != null && this.moodList != moodList) {
+            this.moodList.close();
         }
-        moodEvents.setValue(events);
+        this.moodList = moodList;
     }
 
     public String getFeedType() {
@@ -81,4 +103,12 @@ public class FeedViewModel extends ViewModel implements Serializable {
     public void setUser(User user) {
         this.user = user;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onCleared() {
+        setMoodList(null);
+        Log.d("FeedViewModel", "Cleared with " + MoodList.getOpenMoodListCount() + " open MoodLists and "
+                + MoodList.getLiveListenerCount() + " live listeners.");
+        super.onCleared();
+    }
+}
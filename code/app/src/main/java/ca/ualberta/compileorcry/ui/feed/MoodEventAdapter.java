@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.ualberta.compileorcry.R;
+import ca.ualberta.compileorcry.features.mood.data.MoodListDelta;
 import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
 
@@ -28,6 +29,7 @@ import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
  * - Shows timestamp, trigger text, and social situation
  * - Handles proper spacing between items
  * - Safely handles null references and optional fields
+ * - Applies MoodList deltas as targeted item updates instead of full redraws
  */
 public class MoodEventAdapter extends RecyclerView.Adapter<MoodEventAdapter.ViewHolder> {
     /** The current list of mood events to display */
@@ -63,6 +65,40 @@ public class MoodEventAdapter extends RecyclerView.Adapter<MoodEventAdapter.View
         notifyDataSetChanged();
     }
 
+    /**
+     * @param list A list of mood events
+     * @return true if the adapter is currently displaying that exact list
+     */
+    public boolean isDisplaying(List<MoodEvent> list) {
+        return moodEvents == list;
+    }
+
+    /**
+     * Applies the changes of a MoodList delta as targeted notifyItem* calls.
+     * The adapter's list must be the live view of the MoodList the delta came from,
+     * as the list has already been updated when this is called.
+     *
+     * @param delta The changes made to the list, in the order they were made
+     */
+    public void applyDelta(MoodListDelta delta) {
+        for (MoodListDelta.Change change : delta.getChanges()) {
+            switch (change.getType()) {
+                case INSERTED:
+                    notifyItemInserted(change.getPosition());
+                    break;
+                case CHANGED:
+                    notifyItemChanged(change.getPosition());
+                    break;
+                case REMOVED:
+                    notifyItemRemoved(change.getPosition());
+                    break;
+                case MOVED:
+                    notifyItemMoved(change.getPosition(), change.getToPosition());
+                    break;
+            }
+        }
+    }
+
     /**
      * Creates a new ViewHolder by inflating the item layout.
      *
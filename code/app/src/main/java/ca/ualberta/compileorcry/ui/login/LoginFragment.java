@@ -95,7 +95,7 @@ public class LoginFragment extends Fragment {
             }
             disableUI();
 
-            User.get_user(username, (user, error) -> { // Handle Firebase Response
+            User.get_user_from_db(username, (user, error) -> { // Handle Firebase Response, never a cached user
                 if(error != null || user == null) { // Error Trap
                     binding.loginUsernameLayout.setError(error);
                     binding.loginUsernameLayout.setStartIconTintList(
@@ -1,7 +1,10 @@
 package ca.ualberta.compileorcry.ui.map;
 
 import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,26 +20,109 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MapColorScheme;
 import com.google.android.gms.maps.model.MapStyleOptions;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import ca.ualberta.compileorcry.R;
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
+import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.features.mood.data.MoodList;
+import ca.ualberta.compileorcry.features.mood.data.QueryType;
+import ca.ualberta.compileorcry.features.mood.model.ClusterIndex;
+import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
 import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
 
 /**
  * Fragment that displays a Google Map with markers representing mood events.
  * Users can view locations of different mood events and interact with the map.
+ *
+ * The moods come from an unpaged MoodList for the query of the feed, named by the
+ * {@link #ARG_QUERY_TYPE} and {@link #ARG_FILTER} arguments, and the map follows its updates.
+ * Nearby moods are grouped into clusters by a {@link ClusterIndex} that is built and queried off
+ * the main thread. Only the clusters in the viewport get markers, they are updated when the camera
+ * stops moving and tapping a cluster zooms in on it.
  */
 public class MapFragment extends Fragment implements OnMapReadyCallback {
 
+    public static final String ARG_QUERY_TYPE = "queryType";      //argument with the QueryType of the moods to show
+    public static final String ARG_FILTER = "filter";       //argument with the filter of the query type, if it has one
+
     private GoogleMap googleMap;
+    private MoodList moodList;      //the moods shown, an unpaged query of its own for the filter of the feed
+    private boolean moodsReturned = false;      //true once the MoodList returned its moods
+    private ClusterIndex clusterIndex;      //positions of the shown moods, null until built
+    private List<MoodEvent> indexedMoods = new ArrayList<>();      //the moods of the positions in clusterIndex
+    private int renderGeneration = 0;       //bumped by every render, results of older ones are dropped
+    private int indexGeneration = 0;        //bumped by every index build, results of older ones are dropped
+    private boolean cameraFramed = false;       //true once the camera was moved to the moods, later updates leave it
+    private final HashMap<String, Marker> markers = new HashMap<>();        //shown markers, by cluster key
+    private final HashMap<EmotionalState, BitmapDescriptor> pinIcons = new HashMap<>();      //pin of a single mood, by emotional state
+    private final HashMap<String, BitmapDescriptor> clusterIcons = new HashMap<>();     //circle of a cluster, by emotional state and size label
+
+    /**
+     * Opens the unpaged map query of the feed query in the arguments, so every located mood of
+     * the feed is shown and not only the pages the feed loaded.
+     */
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        Bundle bundle = getArguments();
+        if (bundle == null || !(bundle.getSerializable(ARG_QUERY_TYPE) instanceof QueryType)
+                || User.getActiveUser() == null) {
+            return;
+        }
+        QueryType queryType = (QueryType) bundle.getSerializable(ARG_QUERY_TYPE);
+        moodList = MoodList.createMoodList(User.getActiveUser(), getMapQueryType(queryType), new MoodList.MoodListListener() {
+            @Override
+            public void returnMoodList(MoodList initalizedMoodList) {
+                moodList = initalizedMoodList;
+                moodsReturned = true;
+                reindex();
+            }
+
+            @Override
+            public void updatedMoodList() {
+                reindex();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e("MapFragment", "Moods could not be loaded", e);
+            }
+        }, bundle.getSerializable(ARG_FILTER));
+    }
+
+    /**
+     * The map query of a feed query type, the unfiltered feeds only need their located moods.
+     * The other query types keep their filter and run their own unpaged firestore query. The feed's
+     * list is paged, so it can't be shared: the map would only show the pages the feed loaded.
+     *
+     * @param queryType The query type of the feed
+     * @return The query type of the map
+     */
+    private static QueryType getMapQueryType(QueryType queryType) {
+        switch (queryType) {
+            case HISTORY_MODIFIABLE:
+                return QueryType.MAP_PERSONAL;
+            case FOLLOWING:
+                return QueryType.MAP_FOLLOWING;
+            default:
+                return queryType;
+        }
+    }
 
     /**
      * Inflates the layout for the map fragment.
@@ -64,7 +150,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     }
 
     /**
-     * Called when the Google Map is ready to be used. Configures the map's style and adds markers.
+     * Called when the Google Map is ready to be used. Configures the map's style and starts indexing the moods.
      *
      * @param gMap The GoogleMap instance.
      */
@@ -85,47 +171,245 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
             Log.e("MapStyle", "Can't find style. Error: ", e);
         }
 
-        // Get passed data
-        Bundle bundle = getArguments();
-        LatLngBounds.Builder builder = new LatLngBounds.Builder();
-        boolean hasMoodEvents = false;
-
-        if (bundle != null && bundle.containsKey("moodEvents")) {
-            ArrayList<MoodEvent> moodEvents = (ArrayList<MoodEvent>) bundle.getSerializable("moodEvents");
-
-            if (moodEvents != null) {
-                for (MoodEvent mood : moodEvents) {
-                    // Get mood location
-                    LatLng moodLocation = mood.getDecodedLocation();
-                    // Get mood color
-                    int pinColor = ContextCompat.getColor(requireContext(), mood.getEmotionalState().getColorResId());
-                    // Check for username (history moods will have null username and will not be displayed)
-                    String username = mood.getUsername() != null ? "@" + mood.getUsername() : null;
-                    // Add marker
-                    googleMap.addMarker(new MarkerOptions()
-                            .position(moodLocation)
-                            .title(username)
-                            .icon(BitmapDescriptorFactory.defaultMarker(getHueFromColor(pinColor)))
-                    );
-                    // Include the mood location in the bounds builder
-                    builder.include(moodLocation);
-                }
-                hasMoodEvents = true;
+        googleMap.setOnCameraIdleListener(this::renderClusters);
+        googleMap.setOnMarkerClickListener(this::onMarkerClick);
+
+        if (moodsReturned) {
+            reindex();
+        }
+    }
+
+    /**
+     * Indexes the moods of the MoodList off the main thread and shows them. The camera is framed
+     * around the moods the first time.
+     */
+    private void reindex() {
+        if (googleMap == null || moodList == null) {
+            return;
+        }
+        // Only the located moods are copied here, decoding them would stall the main thread
+        List<MoodEvent> located = new ArrayList<>();
+        for (MoodEvent mood : moodList.getMoodEventsView()) {
+            if (mood.getLocation() != null && mood.getEmotionalState() != null) {
+                located.add(mood);
             }
         }
+        int generation = ++indexGeneration;
+        AppExecutors.getInstance().compute().submit(() -> buildIndex(located))
+                .thenAcceptAsync(index -> {
+                    if (generation != indexGeneration || googleMap == null) {
+                        return; // the moods changed again, a newer index is coming
+                    }
+                    indexedMoods = located;
+                    clusterIndex = index;
+                    if (!cameraFramed) {
+                        frameCamera(index);
+                        cameraFramed = true;
+                    }
+                    renderClusters();
+                }, AppExecutors.getInstance().mainThread());
+    }
 
-        if (!hasMoodEvents) {
-            LatLng defaultLocation = new LatLng(53.5461, -113.4938);
-            googleMap.addMarker(new MarkerOptions().position(defaultLocation).title("Edmonton"));
-            builder.include(defaultLocation);
+    /**
+     * Decodes the positions of the moods into a cluster index, off the main thread.
+     *
+     * @param moods The moods, each with a location and emotional state
+     * @return The index, its positions are in the order of the moods
+     */
+    private static ClusterIndex buildIndex(List<MoodEvent> moods) {
+        double[] latitudes = new double[moods.size()];
+        double[] longitudes = new double[moods.size()];
+        MoodEvent.decodeLocations(moods, latitudes, longitudes);
+        int[] tags = new int[moods.size()];
+        for (int i = 0; i < moods.size(); i++) {
+            tags[i] = moods.get(i).getEmotionalState().ordinal();
         }
+        return new ClusterIndex(latitudes, longitudes, tags, EmotionalState.values().length);
+    }
 
-        // Calculate the bounds and frame camera
-        LatLngBounds bounds = builder.build();
+    /**
+     * Frames the camera around the indexed moods, or Edmonton if there are none.
+     */
+    private void frameCamera(ClusterIndex index) {
+        if (index.size() == 0) {
+            LatLng defaultLocation = new LatLng(53.5461, -113.4938);
+            googleMap.moveCamera(CameraUpdateFactory.newLatLngZoom(defaultLocation, 10));
+            return;
+        }
+        LatLngBounds bounds = new LatLngBounds(new LatLng(index.getSouth(), index.getWest()),
+                new LatLng(index.getNorth(), index.getEast()));
         int padding = 250;
         googleMap.moveCamera(CameraUpdateFactory.newLatLngBounds(bounds, padding));
     }
 
+    /**
+     * Finds the clusters in the viewport at the current zoom off the main thread, then shows
+     * them. Only the markers of clusters that changed are removed or added.
+     */
+    private void renderClusters() {
+        ClusterIndex index = clusterIndex;
+        if (googleMap == null || index == null) {
+            return;
+        }
+        float zoom = googleMap.getCameraPosition().zoom;
+        LatLngBounds viewport = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        int generation = ++renderGeneration;
+        AppExecutors.getInstance().compute().submit(() -> index.clusters(zoom,
+                        viewport.southwest.latitude, viewport.southwest.longitude,
+                        viewport.northeast.latitude, viewport.northeast.longitude))
+                .thenAcceptAsync(clusters -> {
+                    if (generation != renderGeneration || googleMap == null) {
+                        return; // the camera moved again, a newer render is coming
+                    }
+                    showClusters(clusters);
+                }, AppExecutors.getInstance().mainThread());
+    }
+
+    private void showClusters(List<ClusterIndex.Cluster> clusters) {
+        HashMap<String, ClusterIndex.Cluster> visible = new HashMap<>();
+        for (ClusterIndex.Cluster cluster : clusters) {
+            visible.put(getMarkerKey(cluster), cluster);
+        }
+        Iterator<Map.Entry<String, Marker>> shown = markers.entrySet().iterator();
+        while (shown.hasNext()) {
+            Map.Entry<String, Marker> marker = shown.next();
+            if (!visible.containsKey(marker.getKey())) {
+                marker.getValue().remove();
+                shown.remove();
+            }
+        }
+        for (Map.Entry<String, ClusterIndex.Cluster> entry : visible.entrySet()) {
+            if (markers.containsKey(entry.getKey())) {
+                continue;
+            }
+            ClusterIndex.Cluster cluster = entry.getValue();
+            EmotionalState state = EmotionalState.values()[cluster.getTag()];
+            MarkerOptions options = new MarkerOptions()
+                    .position(new LatLng(cluster.getLatitude(), cluster.getLongitude()));
+            if (cluster.getSize() == 1) {
+                // Check for username (history moods will have null username and will not be displayed)
+                MoodEvent mood = indexedMoods.get(cluster.getFirst());
+                options.title(mood.getUsername() != null ? "@" + mood.getUsername() : null)
+                        .icon(getPinIcon(state));
+            } else {
+                options.title(cluster.getSize() + " moods")
+                        .icon(getClusterIcon(state, cluster.getSize()))
+                        .anchor(0.5f, 0.5f);
+            }
+            Marker marker = googleMap.addMarker(options);
+            if (marker != null) {
+                marker.setTag(cluster);
+                markers.put(entry.getKey(), marker);
+            }
+        }
+    }
+
+    /**
+     * A marker is kept while its cluster looks the same, so an update of the moods only
+     * replaces the markers of the clusters it changed.
+     */
+    private String getMarkerKey(ClusterIndex.Cluster cluster) {
+        String key = cluster.getKey() + "/" + cluster.getSize() + "/" + cluster.getTag()
+                + "/" + cluster.getLatitude() + "," + cluster.getLongitude();
+        if (cluster.getSize() == 1) {
+            key += "/" + indexedMoods.get(cluster.getFirst()).getUsername();
+        }
+        return key;
+    }
+
+    /**
+     * Zooms in on a tapped cluster, a single mood shows its title as usual.
+     */
+    private boolean onMarkerClick(Marker marker) {
+        Object tag = marker.getTag();
+        if (!(tag instanceof ClusterIndex.Cluster) || ((ClusterIndex.Cluster) tag).getSize() == 1) {
+            return false;
+        }
+        googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(),
+                googleMap.getCameraPosition().zoom + 2));
+        return true;
+    }
+
+    /**
+     * @return the pin of a single mood, made once per emotional state
+     */
+    private BitmapDescriptor getPinIcon(EmotionalState state) {
+        BitmapDescriptor icon = pinIcons.get(state);
+        if (icon == null) {
+            int pinColor = ContextCompat.getColor(requireContext(), state.getColorResId());
+            icon = BitmapDescriptorFactory.defaultMarker(getHueFromColor(pinColor));
+            pinIcons.put(state, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * @return the circle of a cluster with its size, made once per emotional state and size label
+     */
+    private BitmapDescriptor getClusterIcon(EmotionalState state, int size) {
+        String label = getSizeLabel(size);
+        String key = state.name() + "/" + label;
+        BitmapDescriptor icon = clusterIcons.get(key);
+        if (icon == null) {
+            float density = getResources().getDisplayMetrics().density;
+            int diameter = (int) (40 * density);
+            Bitmap bitmap = Bitmap.createBitmap(diameter, diameter, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(ContextCompat.getColor(requireContext(), state.getColorResId()));
+            canvas.drawCircle(diameter / 2f, diameter / 2f, diameter / 2f, paint);
+            paint.setColor(Color.WHITE);
+            paint.setTextSize(14 * density);
+            paint.setTextAlign(Paint.Align.CENTER);
+            canvas.drawText(label, diameter / 2f, diameter / 2f - (paint.descent() + paint.ascent()) / 2, paint);
+            icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+            clusterIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Sizes are rounded down to a few labels so the cluster icons can be reused.
+     */
+    private static String getSizeLabel(int size) {
+        if (size < 10) {
+            return String.valueOf(size);
+        }
+        int[] steps = {1000, 500, 100, 50, 10};
+        for (int step : steps) {
+            if (size >= step) {
+                return step + "+";
+            }
+        }
+        return String.valueOf(size);
+    }
+
+    /**
+     * Stops rendering, the markers belong to the destroyed map.
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        renderGeneration++;
+        indexGeneration++;
+        cameraFramed = false;
+        googleMap = null;
+        clusterIndex = null;
+        markers.clear();
+    }
+
+    /**
+     * Closes the MoodList of the map, a shared query stays open while another MoodList uses it.
+     */
+    @Override
+    public void onDestroy() {
+        if (moodList != null) {
+            moodList.close();
+            moodList = null;
+        }
+        super.onDestroy();
+    }
+
     /**
      * Converts an integer color value to its corresponding hue value for map markers.
      *
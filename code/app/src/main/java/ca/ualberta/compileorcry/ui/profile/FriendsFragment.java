@@ -26,6 +26,7 @@ import java.util.List;
 import ca.ualberta.compileorcry.R;
 import ca.ualberta.compileorcry.databinding.FragmentFriendsBinding;
 import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.domain.models.UserBatchLoader;
 
 /**
  * Fragment that manages and displays the user's social connections.
@@ -225,15 +226,12 @@ public class FriendsFragment extends Fragment {
                             return;
                         }
 
-                        List<User> followingUsers = new ArrayList<>();
+                        List<String> userIds = new ArrayList<>();
                         for (QueryDocumentSnapshot document : task.getResult()) {
-                            // Assuming each document in the "following" collection
-                            // contains a "userId" field or is the user ID itself
-                            String userId = document.getId();
-
-                            // Create a User object for each following user
-                            fetchUserDetails(userId, followingUsers);
+                            // Each document in the collection is named after the user
+                            userIds.add(document.getId());
                         }
+                        fetchUserDetails(userIds);
                     } else {
                         Log.e(TAG, "Error getting following list", task.getException());
                         showEmptyView(true, "Unable to load following list");
@@ -274,15 +272,12 @@ public class FriendsFragment extends Fragment {
                             return;
                         }
 
-                        List<User> followerUsers = new ArrayList<>();
+                        List<String> userIds = new ArrayList<>();
                         for (QueryDocumentSnapshot document : task.getResult()) {
-                            // Assuming each document in the "followers" collection
-                            // contains a "userId" field or is the user ID itself
-                            String userId = document.getId();
-
-                            // Create a User object for each follower
-                            fetchUserDetails(userId, followerUsers);
+                            // Each document in the collection is named after the user
+                            userIds.add(document.getId());
                         }
+                        fetchUserDetails(userIds);
                     } else {
                         Log.e(TAG, "Error getting followers list", task.getException());
                         showEmptyView(true, "Unable to load followers list");
@@ -291,66 +286,35 @@ public class FriendsFragment extends Fragment {
     }
 
     /**
-     * Fetch full user details from Firestore
+     * Fetch full user details with {@link UserBatchLoader} and show them in one update
      *
-     * @param userId   The ID of the user to fetch
-     * @param userList The list to add the fetched user to
+     * @param userIds The IDs of the users to fetch
      */
-    private void fetchUserDetails(String userId, List<User> userList) {
+    private void fetchUserDetails(List<String> userIds) {
         showEmptyView(false, null);
+        showLoading(true);
 
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        try {
-                            // Create a User object from the document data
-                            String username = documentSnapshot.getString("username");
-                            String name = documentSnapshot.getString("name");
-
-                            // If username is missing, use the user ID as fallback
-                            if (username == null) {
-                                username = userId;
-                            }
-
-                            // Create a User object without document reference for display purposes
-                            // This doesn't attach a Firestore listener
-                            User user = new User(username, name, null);
-
-                            // Check if user is already in the list to avoid duplicates
-                            boolean isDuplicate = false;
-                            for (User existingUser : userList) {
-                                if (existingUser.getUsername().equals(username)) {
-                                    isDuplicate = true;
-                                    break;
-                                }
-                            }
-
-                            if (!isDuplicate) {
-                                userList.add(user);
-
-                                // Sort the list by username
-                                java.util.Collections.sort(userList, (u1, u2) ->
-                                        u1.getUsername().compareToIgnoreCase(u2.getUsername()));
-
-                                // Update the adapter with the new sorted list
-                                userAdapter.updateUserList(userList);
-                            }
-
-                            // Hide loading indicator once we have data
-                            showLoading(false);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error creating user object", e);
-                        }
-                    } else {
-                        Log.w(TAG, "User document not found for ID: " + userId);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error fetching user details", e);
-                    if (userList.isEmpty()) {
-                        showEmptyView(true, "Error loading user data");
-                    }
-                });
+        UserBatchLoader.loadUsers(userIds, (users, error) -> {
+            if (binding == null) {
+                return;
+            }
+            showLoading(false);
+            if (error != null) {
+                Log.e(TAG, "Error fetching user details: " + error);
+                if (users.isEmpty()) {
+                    showEmptyView(true, "Error loading user data");
+                    return;
+                }
+            }
+
+            // Sort the list by username
+            List<User> userList = new ArrayList<>(users);
+            java.util.Collections.sort(userList, (u1, u2) ->
+                    u1.getUsername().compareToIgnoreCase(u2.getUsername()));
+
+            // Update the adapter with the whole sorted list
+            userAdapter.updateUserList(userList);
+        });
     }
 
     /**
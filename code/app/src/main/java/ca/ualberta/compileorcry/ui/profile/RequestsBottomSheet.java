@@ -13,7 +13,6 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
-import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
@@ -22,7 +21,9 @@ import java.util.HashMap;
 import java.util.List;
 
 import ca.ualberta.compileorcry.R;
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.domain.models.UserBatchLoader;
 import ca.ualberta.compileorcry.features.mood.model.FollowHelper;
 
 /**
@@ -131,9 +132,9 @@ public class RequestsBottomSheet extends BottomSheetDialogFragment {
      * <p>This method:
      * <ul>
      *   <li>Retrieves the active user</li>
-     *   <li>Uses FollowHelper to get follow requests from Firestore</li>
+     *   <li>Uses FollowHelper to get follow requests from Firestore without blocking</li>
      *   <li>Handles various error conditions (no active user, null results, empty lists)</li>
-     *   <li>For each request username, fetches complete user details</li>
+     *   <li>Fetches complete user details for all requesters in one batch</li>
      * </ul>
      * </p>
      */
@@ -144,11 +145,14 @@ public class RequestsBottomSheet extends BottomSheetDialogFragment {
             return;
         }
 
-        try {
-            // Use FollowHelper to get the list of follow requests
-            ArrayList<String> requestUsernames = FollowHelper.getFollowRequest(activeUser.getUsername());
-
-            if (requestUsernames == null) {
+        // Use FollowHelper to get the list of follow requests
+        FollowHelper.getFollowRequestAsync(activeUser.getUsername()).whenCompleteAsync((requestUsernames, error) -> {
+            if (getView() == null) {
+                // The sheet was closed while loading
+                return;
+            }
+            if (error != null || requestUsernames == null) {
+                Log.e(TAG, "Error getting friend requests", error);
                 showEmptyView("Error loading friend requests");
                 return;
             }
@@ -158,78 +162,43 @@ public class RequestsBottomSheet extends BottomSheetDialogFragment {
                 return;
             }
 
-            // Fetch user details for each requester
-            List<User> requestUsers = new ArrayList<>();
-            for (String username : requestUsernames) {
-                fetchUserDetails(username, requestUsers);
-            }
-
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Error getting friend requests", e);
-            showEmptyView("Unable to load friend requests");
-        }
+            fetchUserDetails(requestUsernames);
+        }, AppExecutors.getInstance().mainThread());
     }
 
     /**
-     * Fetches complete user details for each request from Firestore.
+     * Fetches complete user details for the requests with {@link UserBatchLoader}.
      *
-     * <p>For each user ID:
+     * <p>The users:
      * <ul>
-     *   <li>Queries the main users collection in Firestore</li>
-     *   <li>Extracts username and display name</li>
-     *   <li>Creates a User object with the retrieved data</li>
-     *   <li>Adds the user to the provided list if not already present</li>
-     *   <li>Updates the adapter with the sorted list</li>
-     *   <li>Handles various error conditions with appropriate UI feedback</li>
+     *   <li>Come from the shared user cache, or from batched Firestore reads</li>
+     *   <li>Are sorted by username</li>
+     *   <li>Are given to the adapter in a single update</li>
      * </ul>
      * </p>
      *
-     * @param userId The ID or username of the user to fetch
-     * @param userList The list to which the fetched user will be added
+     * @param usernames The usernames of the users who sent a request
      */
-    private void fetchUserDetails(String userId, List<User> userList) {
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String username = documentSnapshot.getString("username");
-                        String name = documentSnapshot.getString("name");
-
-                        if (username == null) {
-                            username = userId;
-                        }
-
-                        // Create a user object for display (without document reference for simplicity)
-                        DocumentReference userDocRef = db.collection("users").document(userId);
-                        User user = new User(username, name, userDocRef);
-
-                        // Add to list if not already present
-                        boolean isDuplicate = false;
-                        for (User existingUser : userList) {
-                            if (existingUser.getUsername().equals(username)) {
-                                isDuplicate = true;
-                                break;
-                            }
-                        }
-
-                        if (!isDuplicate) {
-                            userList.add(user);
-                            java.util.Collections.sort(userList, (u1, u2) ->
-                                    u1.getUsername().compareToIgnoreCase(u2.getUsername()));
-                            requestAdapter.updateRequestList(userList);
-
-                            // Hide empty view when we have data
-                            hideEmptyView();
-                        }
-                    } else {
-                        Log.w(TAG, "User document not found for ID: " + userId);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error fetching user details", e);
-                    if (userList.isEmpty()) {
-                        showEmptyView("Error loading user data");
-                    }
-                });
+    private void fetchUserDetails(List<String> usernames) {
+        UserBatchLoader.loadUsers(usernames, (users, error) -> {
+            if (getView() == null) {
+                return;
+            }
+            if (error != null) {
+                Log.e(TAG, "Error fetching user details: " + error);
+            }
+            if (users.isEmpty()) {
+                showEmptyView(error != null ? "Error loading user data" : "No pending friend requests");
+                return;
+            }
+            List<User> requestUsers = new ArrayList<>(users);
+            java.util.Collections.sort(requestUsers, (u1, u2) ->
+                    u1.getUsername().compareToIgnoreCase(u2.getUsername()));
+            requestAdapter.updateRequestList(requestUsers);
+
+            // Hide empty view when we have data
+            hideEmptyView();
+        });
     }
 
     /**
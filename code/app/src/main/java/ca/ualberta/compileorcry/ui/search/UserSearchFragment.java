@@ -18,12 +18,11 @@ import androidx.navigation.fragment.NavHostFragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import ca.ualberta.compileorcry.R;
 import ca.ualberta.compileorcry.databinding.FragmentUserSearchBinding;
 import ca.ualberta.compileorcry.domain.models.User;
+import ca.ualberta.compileorcry.domain.models.UserBatchLoader;
 import ca.ualberta.compileorcry.domain.models.UserSearch;
 
 /**
@@ -36,6 +35,7 @@ public class UserSearchFragment extends Fragment {
     private UserSearchAdapter adapter;
     private ArrayList<User> searchResults;
     private boolean isClearIconVisible = false;
+    private int searchGeneration = 0;   //incremented for every search so results of older searches are dropped
 
     /**
      * Required empty public constructor
@@ -117,58 +117,63 @@ public class UserSearchFragment extends Fragment {
     }
 
     /**
-     * Executes a user search on a background thread and updates UI with the results.
+     * Executes a user search and updates UI with the results. Users already known locally are
+     * shown right away and the list is updated again once the complete result is read.
      *
      * @param query the username to search for
      */
     private void performSearch(String query) {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            try {
-                ArrayList<String> usernames = UserSearch.findUser(query);
-
-                if (usernames == null || usernames.isEmpty()) {
-                    requireActivity().runOnUiThread(() -> {
-                        searchResults.clear();
-                        adapter.notifyDataSetChanged();
-                        binding.searchResultsList.setVisibility(View.GONE);
-                        showEmptyState(R.drawable.ic_clear_big, "No users with this username");
-                    });
+        int generation = ++searchGeneration;
+        UserSearch.findUser(query, new UserSearch.SearchListener() {
+            @Override
+            public void onResults(ArrayList<String> usernames, boolean complete) {
+                if (binding == null || generation != searchGeneration) {
+                    //the view was destroyed or a newer search started
+                    return;
+                }
+                if (usernames.isEmpty()) {
+                    searchResults.clear();
+                    adapter.notifyDataSetChanged();
+                    binding.searchResultsList.setVisibility(View.GONE);
+                    showEmptyState(R.drawable.ic_clear_big, "No users with this username");
                     return;
                 }
+                showUsers(usernames, generation);
+            }
 
-                ArrayList<User> users = new ArrayList<>();
-                int[] loadedCount = {0};
-
-                for (String username : usernames) {
-                    User.get_user(username, (user, error) -> {
-                        loadedCount[0]++;
-                        if (user != null) {
-                            users.add(user);
-                        }
-                        if (loadedCount[0] == usernames.size()) {
-                            requireActivity().runOnUiThread(() -> {
-                                searchResults.clear();
-                                searchResults.addAll(users);
-                                adapter.notifyDataSetChanged();
-
-                                if (users.isEmpty()) {
-                                    binding.searchResultsList.setVisibility(View.GONE);
-                                    showEmptyState(R.drawable.ic_clear_big, "No users with this username");
-                                } else {
-                                    binding.emptyStateContainer.setVisibility(View.GONE);
-                                    binding.searchResultsList.setVisibility(View.VISIBLE);
-                                }
-                            });
-                        }
-                    });
+            @Override
+            public void onError(Exception e) {
+                if (binding == null || generation != searchGeneration) {
+                    return;
                 }
-            } catch (InterruptedException e) {
-                requireActivity().runOnUiThread(() ->
-                        Toast.makeText(requireContext(), "Search failed", Toast.LENGTH_SHORT).show());
+                Toast.makeText(requireContext(), "Search failed", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * Loads the users of a search result as one batch and shows them.
+     *
+     * @param usernames  the usernames found by the search
+     * @param generation the search the usernames belong to
+     */
+    private void showUsers(ArrayList<String> usernames, int generation) {
+        UserBatchLoader.loadUsers(usernames, (users, error) -> {
+            if (binding == null || generation != searchGeneration) {
+                return;
+            }
+            searchResults.clear();
+            searchResults.addAll(users);
+            adapter.notifyDataSetChanged();
+
+            if (users.isEmpty()) {
+                binding.searchResultsList.setVisibility(View.GONE);
+                showEmptyState(R.drawable.ic_clear_big, "No users with this username");
+            } else {
+                binding.emptyStateContainer.setVisibility(View.GONE);
+                binding.searchResultsList.setVisibility(View.VISIBLE);
             }
         });
-        executor.shutdown();
     }
 
 
@@ -176,6 +181,7 @@ public class UserSearchFragment extends Fragment {
      * Resets the search input, results, and UI state to default.
      */
     private void clearSearch() {
+        searchGeneration++;
         binding.searchInput.setText("");
         searchResults.clear();
         adapter.notifyDataSetChanged();
@@ -9,12 +9,9 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-
 import ca.ualberta.compileorcry.R;
 import ca.ualberta.compileorcry.databinding.FragmentViewProfileBinding;
+import ca.ualberta.compileorcry.domain.executors.AppExecutors;
 import ca.ualberta.compileorcry.domain.models.User;
 import ca.ualberta.compileorcry.features.mood.model.FollowHelper;
 
@@ -30,19 +27,29 @@ public class ViewProfileFragment extends Fragment {
     Refreshes the labels on the follow/unfollow/requested button
      */
     private void refreshFollowStatus(){
-        try {
-            if(FollowHelper.isUserFollowing(User.getActiveUser().getUsername(), displayUser.getUsername())){ // User is following user
-                binding.followButtonText.setText(R.string.button_unfollow);
-                binding.followButton.setIconResource(R.drawable.ic_friends_40dp);
-            } else if (FollowHelper.hasUserRequestedFollow(User.getActiveUser().getUsername(), displayUser.getUsername())) { // User has requested to follow
-                binding.followButtonText.setText(R.string.button_requested);
-                binding.followButton.setIconResource(R.drawable.ic_history_40dp);
-            } else { // User is not following and has not requested
-                binding.followButtonText.setText(R.string.button_follow);
-                binding.followButton.setIconResource(R.drawable.ic_person_24dp);
-            }
-        } catch (InterruptedException e){
-            Log.e("ViewProfile", "Error while checking follow status");
+        FollowHelper.getRelationship(User.getActiveUser().getUsername(), displayUser.getUsername())
+                .whenCompleteAsync((relationship, error) -> {
+                    if (binding == null) {
+                        return;
+                    }
+                    if (error != null) {
+                        Log.e("ViewProfile", "Error while checking follow status", error);
+                        return;
+                    }
+                    showFollowStatus(relationship);
+                }, AppExecutors.getInstance().mainThread());
+    }
+
+    private void showFollowStatus(FollowHelper.Relationship relationship){
+        if(relationship.isFollowing()){ // User is following user
+            binding.followButtonText.setText(R.string.button_unfollow);
+            binding.followButton.setIconResource(R.drawable.ic_friends_40dp);
+        } else if (relationship.hasRequested()) { // User has requested to follow
+            binding.followButtonText.setText(R.string.button_requested);
+            binding.followButton.setIconResource(R.drawable.ic_history_40dp);
+        } else { // User is not following and has not requested
+            binding.followButtonText.setText(R.string.button_follow);
+            binding.followButton.setIconResource(R.drawable.ic_person_24dp);
         }
     }
 
@@ -62,12 +69,16 @@ public class ViewProfileFragment extends Fragment {
         String activeUsername = activeUser != null ? activeUser.getUsername() : "";
 
         User.get_user(displayProfileUsername, (user, error) -> {
+            if(binding == null){ // The view was destroyed before the user loaded
+                return;
+            }
             if(error != null){ // Display error message on error fetching user
                 binding.viewProfileName.setText(R.string.error_loading_user);
                 binding.viewProfileUsername.setText(null);
                 return;
             }
             displayUser = user;
+            displayUser.listen(); // Keeps the shown name current, released with the view
             binding.viewProfileUsername.setText(displayUser.getUsername());
             binding.viewProfileName.setText(displayUser.getName());
 
@@ -84,27 +95,47 @@ public class ViewProfileFragment extends Fragment {
         // Create button event handlers
         binding.followButton.setOnClickListener((l) -> {
             if(displayUser != null){
-                try {
-                    // Double-check that we're not trying to follow ourselves
-                    if (displayUser.getUsername().equals(activeUsername)) {
-                        return; // Prevent self-following
-                    }
-
-                    if(FollowHelper.isUserFollowing(User.getActiveUser().getUsername(), displayUser.getUsername())){ // User is following user
-                        FollowHelper.unfollowUser(User.getActiveUser().getUsername(), displayUser.getUsername());
-                    } else if (FollowHelper.hasUserRequestedFollow(User.getActiveUser().getUsername(), displayUser.getUsername())) { // User has requested to follow
-                        FollowHelper.handleFollowRequest(displayUser, User.getActiveUser().getUsername(), false); // Deny follow request to cancel it
-                    } else { // User is not following and has not requested
-                        FollowHelper.createFollowRequest(User.getActiveUser(), displayUser.getUsername());
-                    }
-                } catch (InterruptedException e) {
-                    Log.e("ViewProfile", "Error while handling follow button press");
+                // Double-check that we're not trying to follow ourselves
+                if (displayUser.getUsername().equals(activeUsername)) {
+                    return; // Prevent self-following
                 }
-                refreshFollowStatus();
+
+                binding.followButton.setEnabled(false);
+                User active = User.getActiveUser();
+                User shownUser = displayUser;
+                FollowHelper.getRelationship(active.getUsername(), shownUser.getUsername())
+                        .thenCompose(relationship -> {
+                            if(relationship.isFollowing()){ // User is following user
+                                return FollowHelper.unfollowUserAsync(active.getUsername(), shownUser.getUsername());
+                            } else if (relationship.hasRequested()) { // User has requested to follow
+                                return FollowHelper.handleFollowRequestAsync(shownUser, active.getUsername(), false); // Deny follow request to cancel it
+                            } else { // User is not following and has not requested
+                                return FollowHelper.createFollowRequestAsync(active, shownUser.getUsername());
+                            }
+                        })
+                        .whenCompleteAsync((success, error) -> {
+                            if (binding == null) {
+                                return;
+                            }
+                            if (error != null) {
+                                Log.e("ViewProfile", "Error while handling follow button press", error);
+                            }
+                            binding.followButton.setEnabled(true);
+                            refreshFollowStatus();
+                        }, AppExecutors.getInstance().mainThread());
             }
         });
 
         return root;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (displayUser != null) {
+            displayUser.release();
+            displayUser = null;
+        }
+        binding = null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package ca.ualberta.compileorcry.domain.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local unit tests for {@link AppExecutors.Pool}.
+ */
+public class AppExecutorsTest {
+
+    @Test
+    public void submitCompletesWithResult() throws Exception {
+        AppExecutors.Pool pool = new AppExecutors.Pool("test", 2, 4);
+        assertEquals(Integer.valueOf(42), pool.submit(() -> 42).get(5, TimeUnit.SECONDS));
+        AppExecutors.Stats stats = pool.getStats();
+        assertEquals(1, stats.submitted);
+        assertEquals(1, stats.completed);
+        assertEquals(0, stats.failed);
+    }
+
+    @Test
+    public void submitCompletesExceptionallyWhenTaskThrows() throws Exception {
+        AppExecutors.Pool pool = new AppExecutors.Pool("test", 1, 4);
+        CompletableFuture<Object> future = pool.submit(() -> {
+            throw new IOException("offline");
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected the future to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, pool.getStats().failed);
+    }
+
+    @Test
+    public void nestedSubmitRunsInlineOnSingleThreadPool() throws Exception {
+        AppExecutors.Pool pool = new AppExecutors.Pool("test", 1, 1);
+        String result = pool.await(() -> pool.await(() -> "inner", 1, TimeUnit.SECONDS), 5, TimeUnit.SECONDS);
+        assertEquals("inner", result);
+        assertEquals(2, pool.getStats().submitted);
+    }
+}
@@ -0,0 +1,54 @@
+package ca.ualberta.compileorcry.domain.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Local unit tests for {@link UsernameIndex}.
+ */
+public class UsernameIndexTest {
+
+    @Test
+    public void tokensCoverShortSubstrings() {
+        List<String> tokens = UsernameIndex.tokens("AbAb");
+        assertEquals(List.of("a", "b", "ab", "ba", "aba", "bab"), tokens);
+    }
+
+    @Test
+    public void searchTokensOfLongSearchAreTrigrams() {
+        assertEquals(List.of("te"), UsernameIndex.tokensOfSearch("te"));
+        assertEquals(List.of("tes", "est"), UsernameIndex.tokensOfSearch("test"));
+    }
+
+    @Test
+    public void searchPutsPrefixMatchesFirst() {
+        UsernameIndex index = new UsernameIndex(1000);
+        index.addAll(List.of("sstestss", "TeSt", "nothing", "test", "12test12", "TEST"));
+        List<String> matches = index.search("Test");
+        assertEquals(5, matches.size());
+        assertEquals(List.of("TEST", "TeSt", "test"), matches.subList(0, 3));
+        assertTrue(matches.containsAll(List.of("sstestss", "12test12")));
+    }
+
+    @Test
+    public void fetchedTokenReplacesStaleMatches() {
+        UsernameIndex index = new UsernameIndex(1000);
+        index.addAll(List.of("deleted", "delta", "other"));
+        index.putFetched("del", List.of("delta"), 0);
+        assertEquals(List.of("delta"), index.search("del"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void freshTokenExpires() {
+        UsernameIndex index = new UsernameIndex(1000);
+        index.putFetched("jo", List.of("john"), 0);
+        assertEquals("jo", index.freshTokenFor("john", 500));
+        assertNull(index.freshTokenFor("john", 2000));
+    }
+}
@@ -0,0 +1,70 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Local unit tests for the chunking and merging used by {@link ChunkedQueryExecutor}.
+ */
+public class ChunkedQueryExecutorTest {
+
+    @Test
+    public void chunkSplitsAndDropsDuplicates() {
+        List<List<String>> chunks = ChunkedQueryExecutor.chunk(List.of("a", "b", "c", "a", "d", "e"), 2);
+        assertEquals(3, chunks.size());
+        assertEquals(List.of("a", "b"), chunks.get(0));
+        assertEquals(List.of("c", "d"), chunks.get(1));
+        assertEquals(List.of("e"), chunks.get(2));
+    }
+
+    @Test
+    public void rebalanceKeepsRemainingKeysInPlace() {
+        List<ArrayList<String>> chunks = new ArrayList<>();
+        chunks.add(new ArrayList<>(List.of("a", "b")));
+        chunks.add(new ArrayList<>(List.of("c", "d")));
+        boolean[] changed = ChunkedQueryExecutor.rebalance(chunks, List.of("a", "b", "c"), 2);
+        assertArrayEquals(new boolean[]{false, true}, changed);
+        assertEquals(List.of("a", "b"), chunks.get(0));
+        assertEquals(List.of("c"), chunks.get(1));
+    }
+
+    @Test
+    public void rebalanceFillsRoomBeforeAddingChunks() {
+        List<ArrayList<String>> chunks = new ArrayList<>();
+        chunks.add(new ArrayList<>(List.of("a", "b")));
+        chunks.add(new ArrayList<>(List.of("c")));
+        boolean[] changed = ChunkedQueryExecutor.rebalance(chunks, List.of("a", "b", "c", "d", "e"), 2);
+        assertArrayEquals(new boolean[]{false, true, true}, changed);
+        assertEquals(List.of("c", "d"), chunks.get(1));
+        assertEquals(List.of("e"), chunks.get(2));
+    }
+
+    @Test
+    public void rebalanceEmptiesRemovedChunks() {
+        List<ArrayList<String>> chunks = new ArrayList<>();
+        chunks.add(new ArrayList<>(List.of("a")));
+        chunks.add(new ArrayList<>(List.of("b")));
+        boolean[] changed = ChunkedQueryExecutor.rebalance(chunks, List.of("b"), 1);
+        assertArrayEquals(new boolean[]{true, false}, changed);
+        assertEquals(0, chunks.get(0).size());
+    }
+
+    @Test
+    public void mergeSortedInterleavesLists() {
+        List<List<Integer>> lists = List.of(List.of(9, 5, 1), List.of(8, 7), List.of(), List.of(6, 2));
+        List<Integer> merged = new ArrayList<>();
+        List<Integer> sources = new ArrayList<>();
+        ChunkedQueryExecutor.mergeSorted(lists, Comparator.<Integer>reverseOrder(), (list, element) -> {
+            merged.add(element);
+            sources.add(list);
+        });
+        assertEquals(List.of(9, 8, 7, 6, 5, 2, 1), merged);
+        assertEquals(List.of(0, 1, 1, 3, 0, 3, 0), sources);
+    }
+}
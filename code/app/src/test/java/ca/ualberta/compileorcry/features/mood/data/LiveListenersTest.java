@@ -0,0 +1,25 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.firestore.ListenerRegistration;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link LiveListeners}.
+ */
+public class LiveListenersTest {
+    @Test
+    public void removingCountsOnceAndRemovesTheListener() {
+        int[] removals = {0};
+        int before = LiveListeners.count();
+        ListenerRegistration registration = LiveListeners.track(() -> removals[0]++);
+        assertEquals(before + 1, LiveListeners.count());
+
+        registration.remove();
+        registration.remove();
+        assertEquals(before, LiveListeners.count());
+        assertEquals(1, removals[0]);
+    }
+}
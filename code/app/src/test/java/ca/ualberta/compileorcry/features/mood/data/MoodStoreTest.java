@@ -0,0 +1,93 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import ca.ualberta.compileorcry.features.mood.model.EmotionalState;
+import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+
+/**
+ * Local unit tests for {@link MoodStore}, the indexed store behind MoodList.
+ */
+public class MoodStoreTest {
+    private MoodStore store;
+
+    private static MoodEvent event(String id, long seconds) {
+        MoodEvent event = new MoodEvent(id);
+        event.setEmotionalState(EmotionalState.HAPPINESS);
+        event.setTimestamp(new Timestamp(seconds, 0));
+        return event;
+    }
+
+    @Before
+    public void setup() {
+        store = new MoodStore();
+    }
+
+    @Test
+    public void upsertKeepsNewestFirst() {
+        store.upsert(event("a", 10));
+        store.upsert(event("b", 30));
+        store.upsert(event("c", 20));
+        List<MoodEvent> view = store.view();
+        assertEquals("b", view.get(0).getId());
+        assertEquals("c", view.get(1).getId());
+        assertEquals("a", view.get(2).getId());
+    }
+
+    @Test
+    public void upsertReplacesSameId() {
+        store.upsert(event("a", 10));
+        MoodEvent replacement = event("a", 40);
+        store.upsert(event("b", 20));
+        assertEquals(0, store.upsert(replacement));
+        assertEquals(2, store.size());
+        assertSame(replacement, store.get("a"));
+    }
+
+    @Test
+    public void removeReturnsOldPosition() {
+        store.upsert(event("a", 10));
+        store.upsert(event("b", 20));
+        assertEquals(1, store.remove("a"));
+        assertEquals(-1, store.remove("a"));
+        assertFalse(store.contains("a"));
+        assertNull(store.get("a"));
+    }
+
+    @Test
+    public void repositionAfterInPlaceEdit() {
+        MoodEvent a = event("a", 10);
+        store.upsert(a);
+        store.upsert(event("b", 20));
+        a.setTimestamp(new Timestamp(30, 0));
+        assertEquals(0, store.reposition("a"));
+        assertEquals(0, store.indexOf("a"));
+        assertEquals(1, store.indexOf("b"));
+    }
+
+    @Test
+    public void reconcileReplacesContent() {
+        store.upsert(event("old", 5));
+        store.reconcile(List.of(event("x", 30), event("y", 20), event("z", 10)));
+        assertFalse(store.contains("old"));
+        assertEquals(3, store.size());
+        assertEquals("x", store.getAt(0).getId());
+        assertTrue(store.contains("z"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewIsReadOnly() {
+        store.view().add(event("a", 1));
+    }
+}
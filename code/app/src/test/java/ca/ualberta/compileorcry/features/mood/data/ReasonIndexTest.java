@@ -0,0 +1,73 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.ualberta.compileorcry.features.mood.model.MoodEvent;
+
+/**
+ * Local unit tests for {@link ReasonIndex}.
+ */
+public class ReasonIndexTest {
+    private static final String SCOPE = ReasonIndex.historyScope("tester");
+
+    private static MoodEvent event(String id, String trigger, long seconds) {
+        MoodEvent event = new MoodEvent(id);
+        event.setTimestamp(new Timestamp(seconds, 0));
+        event.setTrigger(trigger);
+        return event;
+    }
+
+    private static List<String> ids(List<MoodEvent> events) {
+        List<String> ids = new ArrayList<>();
+        for (MoodEvent event : events) {
+            ids.add(event.getId());
+        }
+        return ids;
+    }
+
+    private static ReasonIndex emptyIndex() {
+        ReasonIndex index = ReasonIndex.getInstance();
+        index.clear();
+        return index;
+    }
+
+    @Test
+    public void searchRanksPrefixThenWordThenSubstring() {
+        ReasonIndex index = emptyIndex();
+        index.put(SCOPE, event("inner", "Retired today", 30));
+        index.put(SCOPE, event("word", "so tired", 20));
+        index.put(SCOPE, event("prefix", "Tired again", 10));
+        index.put(SCOPE, event("other", "happy", 40));
+        assertEquals(List.of("prefix", "word", "inner"), ids(index.search(SCOPE, "TIRED")));
+    }
+
+    @Test
+    public void shortSearchChecksEveryEvent() {
+        ReasonIndex index = emptyIndex();
+        index.put(SCOPE, event("a", "broke", 10));
+        index.put(SCOPE, event("b", "fine", 20));
+        assertEquals(List.of("a"), ids(index.search(SCOPE, "ok")));
+    }
+
+    @Test
+    public void putReplacesAndRemoveForgets() {
+        ReasonIndex index = emptyIndex();
+        MoodEvent event = event("a", "exams", 10);
+        index.put(SCOPE, event);
+        event.setTrigger("work");
+        index.put(SCOPE, event);
+        assertTrue(index.search(SCOPE, "exam").isEmpty());
+        assertNotSame(event, index.search(SCOPE, "work").get(0));
+        index.remove(SCOPE, "a");
+        assertEquals(0, index.size(SCOPE));
+    }
+}
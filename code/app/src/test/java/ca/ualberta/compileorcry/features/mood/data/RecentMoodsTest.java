@@ -0,0 +1,49 @@
+package ca.ualberta.compileorcry.features.mood.data;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local unit tests for the projection kept by {@link RecentMoods}.
+ */
+public class RecentMoodsTest {
+
+    private static RecentMoods.Entry entry(String id, long seconds) {
+        return new RecentMoods.Entry(id, new Timestamp(seconds, 0));
+    }
+
+    private static List<String> ids(List<RecentMoods.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (RecentMoods.Entry entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void projectKeepsNewestThree() {
+        List<RecentMoods.Entry> projected = RecentMoods.project(List.of(
+                entry("a", 10), entry("b", 40), entry("c", 30), entry("d", 20)));
+        assertEquals(List.of("b", "c", "d"), ids(projected));
+    }
+
+    @Test
+    public void projectDropsOlderEvent() {
+        List<RecentMoods.Entry> projected = RecentMoods.project(List.of(
+                entry("b", 40), entry("c", 30), entry("d", 20), entry("old", 5)));
+        assertEquals(List.of("b", "c", "d"), ids(projected));
+    }
+
+    @Test
+    public void projectDropsDuplicateIds() {
+        List<RecentMoods.Entry> projected = RecentMoods.project(List.of(
+                entry("a", 10), entry("a", 50), entry("b", 20)));
+        assertEquals(List.of("a", "b"), ids(projected));
+    }
+}
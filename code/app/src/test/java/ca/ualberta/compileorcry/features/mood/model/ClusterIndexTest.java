@@ -0,0 +1,68 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Local unit tests for {@link ClusterIndex}.
+ */
+public class ClusterIndexTest {
+    // Two moods a few metres apart in Edmonton and one in Calgary
+    private static final double[] LATITUDES = {53.5461, 53.5462, 51.0447};
+    private static final double[] LONGITUDES = {-113.4938, -113.4939, -114.0719};
+    private static final int[] TAGS = {1, 1, 2};
+
+    private final ClusterIndex index = new ClusterIndex(LATITUDES, LONGITUDES, TAGS, 3);
+
+    @Test
+    public void nearbyMoodsClusterWhenZoomedOut() {
+        List<ClusterIndex.Cluster> clusters = index.clusters(8, -90, -180, 90, 180);
+        assertEquals(2, clusters.size());
+        int total = 0;
+        for (ClusterIndex.Cluster cluster : clusters) {
+            total += cluster.getSize();
+            if (cluster.getSize() == 2) {
+                assertEquals(1, cluster.getTag());
+                assertEquals(53.54615, cluster.getLatitude(), 1e-9);
+            }
+        }
+        assertEquals(3, total);
+    }
+
+    @Test
+    public void everyMoodIsItsOwnClusterWhenZoomedIn() {
+        assertEquals(3, index.clusters(ClusterIndex.MAX_CLUSTER_ZOOM + 1, -90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void onlyClustersInViewportAreReturned() {
+        List<ClusterIndex.Cluster> clusters = index.clusters(ClusterIndex.MAX_CLUSTER_ZOOM + 1, 53, -114, 54, -113);
+        assertEquals(2, clusters.size());
+        for (ClusterIndex.Cluster cluster : clusters) {
+            assertTrue(cluster.getLatitude() > 53);
+        }
+    }
+
+    @Test
+    public void viewportCanCrossAntimeridian() {
+        assertEquals(0, index.clusters(ClusterIndex.MAX_CLUSTER_ZOOM + 1, -90, 170, 90, -170).size());
+        assertEquals(3, index.clusters(ClusterIndex.MAX_CLUSTER_ZOOM + 1, -90, 0, 90, -100).size());
+    }
+
+    @Test
+    public void boundsCoverAllMoods() {
+        assertEquals(51.0447, index.getSouth(), 0);
+        assertEquals(53.5462, index.getNorth(), 0);
+        assertEquals(-114.0719, index.getWest(), 0);
+        assertEquals(-113.4938, index.getEast(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tagsMustBeInRange() {
+        new ClusterIndex(new double[]{0}, new double[]{0}, new int[]{3}, 3);
+    }
+}
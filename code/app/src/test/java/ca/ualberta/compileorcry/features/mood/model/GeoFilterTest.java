@@ -0,0 +1,72 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.firebase.geofire.core.GeoHash;
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for {@link GeoFilter}.
+ */
+public class GeoFilterTest {
+    private static final GeoHash CENTER = new GeoHash("c3x2");
+
+    private static MoodEvent event(EmotionalState state, long seconds) {
+        MoodEvent event = new MoodEvent("id");
+        event.setEmotionalState(state);
+        event.setTimestamp(new Timestamp(seconds, 0));
+        return event;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void centerIsRequired() {
+        new GeoFilter(null, GeoFilter.DEFAULT_RADIUS_METERS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void radiusMustBePositive() {
+        new GeoFilter(CENTER, 0);
+    }
+
+    @Test
+    public void detailsMatchTimeWindowAndState() {
+        GeoFilter filter = new GeoFilter(CENTER, 1000, new Timestamp(100, 0), new Timestamp(200, 0), EmotionalState.HAPPINESS);
+        assertTrue(filter.matchesDetails(event(EmotionalState.HAPPINESS, 100)));
+        assertTrue(filter.matchesDetails(event(EmotionalState.HAPPINESS, 200)));
+        assertFalse(filter.matchesDetails(event(EmotionalState.HAPPINESS, 99)));
+        assertFalse(filter.matchesDetails(event(EmotionalState.HAPPINESS, 201)));
+        assertFalse(filter.matchesDetails(event(EmotionalState.SADNESS, 150)));
+    }
+
+    @Test
+    public void eventWithoutLocationNeverMatches() {
+        assertFalse(new GeoFilter(CENTER, 1000).matches(event(EmotionalState.SADNESS, 150)));
+    }
+
+    @Test
+    public void matchesEventsWithinRadius() {
+        GeoFilter filter = new GeoFilter(CENTER, GeoFilter.DEFAULT_RADIUS_METERS);
+        MoodEvent near = event(EmotionalState.SADNESS, 150);
+        near.setLocation(new GeoHash("c3x2"));
+        MoodEvent far = event(EmotionalState.SADNESS, 150);
+        far.setLocation(new GeoHash("u4pr"));
+        assertTrue(filter.matches(near));
+        assertFalse(filter.matches(far));
+        // The decoded location is dropped when the location changes
+        near.setLocation(new GeoHash("u4pr"));
+        assertFalse(filter.matches(near));
+    }
+
+    @Test
+    public void moveKeepsDetails() {
+        GeoFilter filter = new GeoFilter(CENTER, 1000, new Timestamp(100, 0), null, EmotionalState.ANGER);
+        GeoFilter moved = filter.moveTo(new GeoHash("c3nf"), 2000);
+        assertEquals(2000, moved.getRadiusMeters(), 0);
+        assertEquals(filter.getSince(), moved.getSince());
+        assertEquals(EmotionalState.ANGER, moved.getEmotionalState());
+    }
+}
@@ -0,0 +1,44 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Local unit tests for {@link GeoHashDecoder}.
+ */
+public class GeoHashDecoderTest {
+
+    @Test
+    public void decodesToCenterOfCell() {
+        double[] position = GeoHashDecoder.decode("u4pruydqqvj");
+        assertEquals(57.64911, position[0], 1e-5);
+        assertEquals(10.40744, position[1], 1e-5);
+    }
+
+    @Test
+    public void decodesManyIntoArrays() {
+        double[] latitudes = new double[3];
+        double[] longitudes = new double[3];
+        GeoHashDecoder.decodeAll(Arrays.asList("u4pruydqqvj", null, "c3x2"), latitudes, longitudes);
+        assertEquals(57.64911, latitudes[0], 1e-5);
+        assertTrue(Double.isNaN(latitudes[1]) && Double.isNaN(longitudes[1]));
+        assertTrue(latitudes[2] > 53 && latitudes[2] < 54);
+        assertTrue(longitudes[2] > -114 && longitudes[2] < -113);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidCharacters() {
+        GeoHashDecoder.decode("u4pa");
+    }
+
+    @Test
+    public void measuresGreatCircleDistance() {
+        // Edmonton to Calgary is about 280km
+        double distance = GeoHashDecoder.distanceBetween(53.5461, -113.4938, 51.0447, -114.0719);
+        assertEquals(280_000, distance, 5_000);
+    }
+}
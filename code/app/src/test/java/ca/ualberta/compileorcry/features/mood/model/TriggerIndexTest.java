@@ -0,0 +1,34 @@
+package ca.ualberta.compileorcry.features.mood.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Local unit tests for {@link TriggerIndex}.
+ */
+public class TriggerIndexTest {
+
+    @Test
+    public void tokensAreLowercaseWordTrigrams() {
+        assertEquals(List.of("so", "tir", "ire", "red"), TriggerIndex.tokens("So TIRED!"));
+    }
+
+    @Test
+    public void searchTokenComesFromLongestWord() {
+        assertEquals("exa", TriggerIndex.searchToken("my Exams"));
+        assertNull(TriggerIndex.searchToken("ok"));
+    }
+
+    @Test
+    public void matchingTriggerContainsSearchToken() {
+        String search = "tired of";
+        String trigger = "Retired officer";
+        assertTrue(TriggerIndex.lowercase(trigger).contains(search));
+        assertTrue(TriggerIndex.tokens(trigger).contains(TriggerIndex.searchToken(search)));
+    }
+}